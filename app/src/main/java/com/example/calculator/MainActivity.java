@@ -13,8 +13,13 @@ import androidx.appcompat.app.AppCompatActivity;
  */
 public class MainActivity extends AppCompatActivity {
     
+    // Compiled plans kept for re-evaluated expressions
+    private static final int EXPRESSION_CACHE_ENTRIES = 32;
+    private static final long EXPRESSION_CACHE_BYTES = 64 * 1024;
+    
     private TextView textDisplay;
     private StringBuilder currentExpression;
+    private final EvaluationResult evaluation = new EvaluationResult();
     private boolean isNewExpression;
     private boolean isError;
     
@@ -29,11 +34,21 @@ public class MainActivity extends AppCompatActivity {
             setContentView(R.layout.activity_main);
         }
         
+        initializeExpressionCache();
         initializeViews();
         setupButtonClickListeners();
         resetCalculator();
     }
     
+    /**
+     * Install a small plan cache so repeated evaluations skip parsing.
+     */
+    private void initializeExpressionCache() {
+        if (CalculatorLogic.getCache() == null) {
+            CalculatorLogic.setCache(new ExpressionCache(EXPRESSION_CACHE_ENTRIES, EXPRESSION_CACHE_BYTES));
+        }
+    }
+    
     /**
      * Initialize UI components.
      */
@@ -353,18 +368,11 @@ public class MainActivity extends AppCompatActivity {
     private void calculateResult() {
         if (isError || currentExpression.length() == 0) return;
         
-        // Validate expression before evaluation
-        if (!CalculatorLogic.isValidExpression(currentExpression.toString())) {
-            showError("Invalid expression");
-            return;
-        }
-        
-        double result = CalculatorLogic.evaluate(currentExpression.toString());
-        
-        if (Double.isNaN(result)) {
-            showError("Error");
+        // Validate and evaluate the expression in a single pass, straight from the builder
+        if (!CalculatorLogic.evaluate(currentExpression, 0, currentExpression.length(), evaluation)) {
+            showError(evaluation.isSyntaxError() ? "Invalid expression" : "Error");
         } else {
-            String formattedResult = CalculatorLogic.formatResult(result);
+            String formattedResult = CalculatorLogic.formatResult(evaluation.getValue());
             textDisplay.setText(formattedResult);
             currentExpression.setLength(0);
             currentExpression.append(formattedResult);
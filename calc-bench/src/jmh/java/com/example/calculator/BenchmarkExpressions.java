@@ -0,0 +1,109 @@
+package com.example.calculator;
+
+/**
+ * BenchmarkExpressions builds the input expressions shared by the benchmarks.
+ * All inputs use the display alphabet (×, ÷, −, √, ², %) that MainActivity produces.
+ */
+final class BenchmarkExpressions {
+
+    static final String SMALL = "small";
+    static final String MEDIUM = "medium";
+    static final String NESTED = "nested";
+    static final String LONG = "long";
+
+    private BenchmarkExpressions() {
+    }
+
+    /**
+     * Returns the expression for a benchmark shape.
+     */
+    static String forShape(String shape) {
+        switch (shape) {
+            case SMALL:
+                return "12+7×3";
+            case MEDIUM:
+                return "(12.5+7)×3−√16÷2+45%−(3.25−1)²";
+            case NESTED:
+                return nested(64);
+            case LONG:
+                return longChain(1000);
+            default:
+                throw new IllegalArgumentException("Unknown shape: " + shape);
+        }
+    }
+
+    /**
+     * Builds depth levels of parentheses, each adding an operator and an operand.
+     */
+    static String nested(int depth) {
+        StringBuilder expression = new StringBuilder();
+        for (int i = 0; i < depth; i++) {
+            expression.append("(").append(i % 9 + 1).append(i % 2 == 0 ? "+" : "×");
+        }
+        expression.append("1");
+        for (int i = 0; i < depth; i++) {
+            expression.append(")");
+        }
+        return expression.toString();
+    }
+
+    /**
+     * Builds a flat chain of terms mixing every operator and function.
+     */
+    static String longChain(int terms) {
+        StringBuilder expression = new StringBuilder("1");
+        for (int i = 0; i < terms; i++) {
+            switch (i % 5) {
+                case 0:
+                    expression.append("+").append(i).append(".25");
+                    break;
+                case 1:
+                    expression.append("−√").append(i);
+                    break;
+                case 2:
+                    expression.append("×").append(i % 7 + 1).append("²");
+                    break;
+                case 3:
+                    expression.append("÷").append(i % 3 + 2);
+                    break;
+                default:
+                    expression.append("+").append(i).append("%");
+                    break;
+            }
+        }
+        return expression.toString();
+    }
+
+    /**
+     * Builds a machine-generated style formula over the variables a and b in
+     * which a few subexpressions recur in every term.
+     */
+    static String repeatedTerms(int terms) {
+        StringBuilder expression = new StringBuilder("√(a×a+b×b)");
+        for (int i = 0; i < terms; i++) {
+            switch (i % 3) {
+                case 0:
+                    expression.append("+√(a×a+b×b)×").append(i + 1);
+                    break;
+                case 1:
+                    expression.append("−(a−b)²÷√(a×a+b×b)");
+                    break;
+                default:
+                    expression.append("+(a−b)²×(a+").append(i).append(")");
+                    break;
+            }
+        }
+        return expression.toString();
+    }
+
+    /**
+     * Builds a sum of count distinct variables, v0+v1+...
+     */
+    static String distinctVariables(int count) {
+        StringBuilder expression = new StringBuilder("v0");
+        for (int i = 1; i < count; i++) {
+            expression.append("+v").append(i);
+        }
+        return expression.toString();
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.calculator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * BytecodeBenchmark evaluates the same compiled expressions with the postfix
+ * interpreter and as generated hidden classes, and measures generating and
+ * defining such a class.
+ * Run with: ./gradlew :calc-bench:jmh -Pjmh.includes=BytecodeBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BytecodeBenchmark {
+
+    @Param({"polynomial", "repeated", "long"})
+    public String shape;
+
+    private CompiledExpression interpreted;
+    private HotExpression hot;
+
+    private final double[] slots = {3.5, 1.25};
+    private final EvaluationResult status = new EvaluationResult();
+
+    @Setup
+    public void setUp() {
+        String expression;
+        switch (shape) {
+            case "polynomial":
+                expression = "3×a^3−2×a×b+√(a×a+b×b)÷(b+1)−a÷4";
+                break;
+            case "repeated":
+                expression = BenchmarkExpressions.repeatedTerms(30);
+                break;
+            default:
+                expression = BenchmarkExpressions.repeatedTerms(300);
+                break;
+        }
+        interpreted = CalculatorLogic.compile(expression, "a", "b");
+        // A threshold of 0 compiles on the first evaluation
+        hot = new HotExpression(interpreted, 0);
+        hot.evaluate(slots);
+        if (!hot.isCompiled()) {
+            throw new IllegalStateException("Expected bytecode for " + shape);
+        }
+    }
+
+    @Benchmark
+    public double interpreter() {
+        return interpreted.evaluate(slots);
+    }
+
+    @Benchmark
+    public double bytecode() {
+        return hot.evaluate(slots);
+    }
+
+    @Benchmark
+    public boolean bytecodeWithResult() {
+        return hot.evaluate(slots, status);
+    }
+
+    @Benchmark
+    public Object defineClass() {
+        return BytecodeCompiler.compile(interpreted.program());
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.calculator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+/**
+ * ClosureBenchmark evaluates the same compiled expressions with the postfix
+ * interpreter and with closure trees, and measures building a closure tree.
+ * Run with: ./gradlew :calc-bench:jmh -Pjmh.includes=ClosureBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ClosureBenchmark {
+
+    @Param({"polynomial", "repeated", "long"})
+    public String shape;
+
+    private CompiledExpression interpreted;
+    private CompiledExpression closures;
+
+    private final double[] slots = {3.5, 1.25};
+    private final EvaluationResult status = new EvaluationResult();
+
+    @Setup
+    public void setUp() {
+        String expression;
+        switch (shape) {
+            case "polynomial":
+                expression = "3×a^3−2×a×b+√(a×a+b×b)÷(b+1)−a÷4";
+                break;
+            case "repeated":
+                expression = BenchmarkExpressions.repeatedTerms(30);
+                break;
+            default:
+                expression = BenchmarkExpressions.repeatedTerms(300);
+                break;
+        }
+        CalculatorLogic.setClosureEvaluation(false);
+        interpreted = CalculatorLogic.compile(expression, "a", "b");
+        CalculatorLogic.setClosureEvaluation(true);
+        closures = CalculatorLogic.compile(expression, "a", "b");
+    }
+
+    @TearDown
+    public void tearDown() {
+        CalculatorLogic.setClosureEvaluation(false);
+    }
+
+    @Benchmark
+    public double interpreter() {
+        return interpreted.evaluate(slots);
+    }
+
+    @Benchmark
+    public double closureTree() {
+        return closures.evaluate(slots);
+    }
+
+    @Benchmark
+    public boolean interpreterWithResult() {
+        return interpreted.evaluate(slots, status);
+    }
+
+    @Benchmark
+    public boolean closureTreeWithResult() {
+        return closures.evaluate(slots, status);
+    }
+
+    @Benchmark
+    public ClosureNode buildClosureTree() {
+        return ClosureCompiler.compile(interpreted.program());
+    }
+}
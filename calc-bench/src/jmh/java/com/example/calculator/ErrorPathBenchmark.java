@@ -0,0 +1,50 @@
+package com.example.calculator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * ErrorPathBenchmark compares rejecting invalid input through an
+ * EvaluationResult with rejecting it through the throwing compile() API.
+ * Run with: ./gradlew :calc-bench:jmh -Pjmh.includes=ErrorPathBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class ErrorPathBenchmark {
+
+    @Param({"12+×3", "(12.5+7)×3−√16÷2+", "12÷(3−3)", "√(2−9)"})
+    public String expression;
+
+    private final EvaluationResult status = new EvaluationResult();
+
+    @Setup
+    public void setUp() {
+        if (CalculatorLogic.evaluate(expression, status)) {
+            throw new IllegalStateException("Expected an invalid expression: " + expression);
+        }
+    }
+
+    @Benchmark
+    public int evaluateWithResult() {
+        CalculatorLogic.evaluate(expression, status);
+        return status.getStatus();
+    }
+
+    @Benchmark
+    public double compileAndCatch() {
+        try {
+            return CalculatorLogic.compile(expression).evaluate();
+        } catch (IllegalArgumentException e) {
+            return Double.NaN;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.example.calculator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * LimitsBenchmark evaluates inputs over each of the EvaluationLimits.UNTRUSTED
+ * limits, once rejected by the limits and once compiled and evaluated in
+ * full without them.
+ * Run with: ./gradlew :calc-bench:jmh -Pjmh.includes=LimitsBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class LimitsBenchmark {
+
+    @Param({"length", "depth", "tokens", "operations"})
+    public String limit;
+
+    private String input;
+    private final Evaluator limitedEvaluator = new Evaluator(EvaluationLimits.UNTRUSTED);
+    private final Evaluator unlimitedEvaluator = new Evaluator(EvaluationLimits.NONE);
+    private final EvaluationResult status = new EvaluationResult();
+
+    @Setup
+    public void setUp() {
+        StringBuilder expression = new StringBuilder();
+        switch (limit) {
+            case "length":
+                // About 10 MB of text
+                input = BenchmarkExpressions.longChain(2_000_000);
+                return;
+            case "depth":
+                input = BenchmarkExpressions.nested(2_000);
+                return;
+            case "tokens":
+                for (int i = 0; i < 14_000; i++) {
+                    expression.append("(1)+");
+                }
+                input = expression.append("1").toString();
+                return;
+            default:
+                for (int i = 0; i < 30_000; i++) {
+                    expression.append("−");
+                }
+                input = expression.append("1").toString();
+                return;
+        }
+    }
+
+    @Benchmark
+    public int rejected() {
+        limitedEvaluator.evaluate(input, status);
+        return status.getStatus();
+    }
+
+    @Benchmark
+    public int unlimited() {
+        unlimitedEvaluator.evaluate(input, status);
+        return status.getStatus();
+    }
+}
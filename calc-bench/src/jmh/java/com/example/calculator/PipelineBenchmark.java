@@ -0,0 +1,131 @@
+package com.example.calculator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * PipelineBenchmark measures each phase of CalculatorLogic on its own and the
+ * full evaluate() end to end. The phases run on one reused Evaluator, the
+ * same stages and buffers that evaluate() compiles with. Every phase gets
+ * the real output of the phase before it, prepared once in setup, so only
+ * the phase itself is timed.
+ * Run with: ./gradlew :calc-bench:jmh
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class PipelineBenchmark {
+
+    @Param({BenchmarkExpressions.SMALL, BenchmarkExpressions.MEDIUM,
+            BenchmarkExpressions.NESTED, BenchmarkExpressions.LONG})
+    public String shape;
+
+    private String expression;
+    private StringBuilder display;
+    private ExpressionProgram program;
+    private ExpressionProgram unoptimizedProgram;
+    private double result;
+
+    private final double[] noSlots = new double[0];
+    private final StringBuilder output = new StringBuilder();
+    private final EvaluationResult status = new EvaluationResult();
+    private final List<String> variables = new ArrayList<String>();
+    private final Evaluator evaluator = new Evaluator();
+
+    @Setup
+    public void setUp() {
+        expression = BenchmarkExpressions.forShape(shape);
+        display = new StringBuilder(expression);
+        evaluator.scan(expression, 0, expression.length(), status);
+        evaluator.parse(expression, variables, false, status);
+        evaluator.optimize();
+        evaluator.generate(false);
+        unoptimizedProgram = evaluator.program();
+        evaluator.generate(true);
+        program = evaluator.program();
+        result = evaluatePostfix();
+    }
+
+    @Benchmark
+    public boolean tokenizeExpression() {
+        return evaluator.scan(expression, 0, expression.length(), status);
+    }
+
+    @Benchmark
+    public boolean parseExpression() {
+        variables.clear();
+        return evaluator.parse(expression, variables, false, status);
+    }
+
+    @Benchmark
+    public void optimizeExpression() {
+        evaluator.optimize();
+    }
+
+    @Benchmark
+    public ExpressionProgram generateProgram() {
+        evaluator.generate(true);
+        return evaluator.program();
+    }
+
+    @Benchmark
+    public double evaluatePostfix() {
+        return program.execute(noSlots, evaluator.scratch(program.frameSize()));
+    }
+
+    @Benchmark
+    public double evaluateUnoptimized() {
+        return unoptimizedProgram.execute(noSlots, evaluator.scratch(unoptimizedProgram.frameSize()));
+    }
+
+    @Benchmark
+    public String formatResult() {
+        return CalculatorLogic.formatResult(result);
+    }
+
+    @Benchmark
+    public StringBuilder formatResultAppend() {
+        output.setLength(0);
+        return CalculatorLogic.formatResult(result, output);
+    }
+
+    @Benchmark
+    public boolean isValidExpression() {
+        return CalculatorLogic.isValidExpression(expression);
+    }
+
+    @Benchmark
+    public double evaluate() {
+        return CalculatorLogic.evaluate(expression);
+    }
+
+    @Benchmark
+    public boolean evaluateWithResult() {
+        return CalculatorLogic.evaluate(expression, status);
+    }
+
+    @Benchmark
+    public boolean evaluateRange() {
+        return CalculatorLogic.evaluate(display, 0, display.length(), status);
+    }
+
+    @Benchmark
+    public boolean evaluateToString() {
+        return CalculatorLogic.evaluate(display.toString(), status);
+    }
+
+    @Benchmark
+    public boolean evaluateWithEvaluator() {
+        return evaluator.evaluate(expression, status);
+    }
+}
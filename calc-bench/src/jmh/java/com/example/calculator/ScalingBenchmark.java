@@ -0,0 +1,61 @@
+package com.example.calculator;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * ScalingBenchmark compiles and evaluates inputs from 1 KB to 100 MB of
+ * text, flat, nested a quarter of their length deep, and with one distinct
+ * variable per term. Time per operation should grow in proportion to the
+ * size for every shape. The fork runs with a small thread stack, so any
+ * recursion proportional to the nesting depth fails the run, and with a heap
+ * large enough for the 100 MB inputs.
+ * Run with: ./gradlew :calc-bench:jmh -Pjmh.includes=ScalingBenchmark
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Fork(jvmArgsAppend = {"-Xss256k", "-Xmx8g"})
+public class ScalingBenchmark {
+
+    @Param({"flat", "nested", "variables"})
+    public String shape;
+
+    // Input length in characters
+    @Param({"1000", "100000", "10000000", "100000000"})
+    public int size;
+
+    private String input;
+    private double[] slots;
+
+    @Setup
+    public void setUp() {
+        switch (shape) {
+            case "flat":
+                input = BenchmarkExpressions.longChain(size / 6);
+                break;
+            case "nested":
+                input = BenchmarkExpressions.nested(size / 4);
+                break;
+            default:
+                // About eight characters per term at these sizes
+                input = BenchmarkExpressions.distinctVariables(size / 8);
+                break;
+        }
+        slots = new double[CalculatorLogic.compile(input).getVariableCount()];
+    }
+
+    @Benchmark
+    public double compileAndEvaluate() {
+        return CalculatorLogic.compile(input).evaluate(slots);
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.calculator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * SharedSubexpressionBenchmark evaluates formulas whose terms repeat the same
+ * subexpressions, once compiled with each distinct subexpression computed a
+ * single time and once compiled straight from the syntax tree, both by the
+ * stages of one Evaluator.
+ * Run with: ./gradlew :calc-bench:jmh -Pjmh.includes=SharedSubexpressionBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class SharedSubexpressionBenchmark {
+
+    @Param({"2", "30", "300"})
+    public int terms;
+
+    private ExpressionProgram shared;
+    private ExpressionProgram unshared;
+
+    private final double[] slots = {3.5, 1.25};
+    private final EvaluationResult status = new EvaluationResult();
+    private final Evaluator evaluator = new Evaluator();
+
+    @Setup
+    public void setUp() {
+        String expression = BenchmarkExpressions.repeatedTerms(terms);
+        List<String> variables = new ArrayList<String>(Arrays.asList("a", "b"));
+        evaluator.scan(expression, 0, expression.length(), status);
+        evaluator.parse(expression, variables, true, status);
+        evaluator.optimize();
+        evaluator.generate(true);
+        shared = evaluator.program();
+        evaluator.generate(false);
+        unshared = evaluator.program();
+    }
+
+    @Benchmark
+    public double evaluateShared() {
+        return shared.execute(slots, evaluator.scratch(shared.frameSize()));
+    }
+
+    @Benchmark
+    public double evaluateUnshared() {
+        return unshared.execute(slots, evaluator.scratch(unshared.frameSize()));
+    }
+}
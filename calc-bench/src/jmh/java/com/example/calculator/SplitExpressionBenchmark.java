@@ -0,0 +1,48 @@
+package com.example.calculator;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * SplitExpressionBenchmark evaluates one very large expression on the
+ * calling thread and split into parts on the common ForkJoinPool.
+ * Run with: ./gradlew :calc-bench:jmh -Pjmh.includes=SplitExpressionBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SplitExpressionBenchmark {
+
+    @Param({"10000", "100000"})
+    public int terms;
+
+    private CompiledExpression expression;
+    private ParallelEvaluator parallel;
+
+    private final double[] slots = {3.5, 1.25};
+
+    @Setup
+    public void setUp() {
+        expression = CalculatorLogic.compile(BenchmarkExpressions.repeatedTerms(terms), "a", "b");
+        parallel = new ParallelEvaluator(ForkJoinPool.commonPool(), ParallelEvaluator.DEFAULT_CHUNK_SIZE);
+    }
+
+    @Benchmark
+    public double sequential() {
+        return expression.evaluate(slots);
+    }
+
+    @Benchmark
+    public double split() {
+        return parallel.evaluate(expression, slots);
+    }
+}
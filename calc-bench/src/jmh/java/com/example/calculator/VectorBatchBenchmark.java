@@ -0,0 +1,67 @@
+package com.example.calculator;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * VectorBatchBenchmark evaluates one expression over columns of rows with
+ * the scalar BatchEvaluator and with the Vector API backend.
+ * Run with: ./gradlew :calc-bench:jmh -Pjmh.includes=VectorBatchBenchmark
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class VectorBatchBenchmark {
+
+    @Param({"polynomial", "repeated"})
+    public String shape;
+
+    @Param({"10000"})
+    public int rows;
+
+    private CompiledExpression expression;
+    private double[][] columns;
+    private double[] results;
+
+    private final BatchEvaluator scalar = new BatchEvaluator();
+    private final VectorBatchEvaluator vector = new VectorBatchEvaluator();
+
+    @Setup
+    public void setUp() {
+        if (!VectorBatchEvaluator.isVectorized()) {
+            throw new IllegalStateException("Vector API unavailable; run with --add-modules jdk.incubator.vector");
+        }
+        String source = "polynomial".equals(shape)
+                ? "3×a^3−2×a×b+√(a×a+b×b)÷(b+1)−a÷4"
+                : BenchmarkExpressions.repeatedTerms(30);
+        expression = CalculatorLogic.compile(source, "a", "b");
+        Random random = new Random(42);
+        columns = new double[2][rows];
+        for (int i = 0; i < rows; i++) {
+            columns[0][i] = random.nextDouble() * 10;
+            columns[1][i] = random.nextDouble() * 10;
+        }
+        results = new double[rows];
+    }
+
+    @Benchmark
+    public double[] scalar() {
+        scalar.evaluate(expression, columns, results);
+        return results;
+    }
+
+    @Benchmark
+    public double[] vector() {
+        vector.evaluate(expression, columns, results);
+        return results;
+    }
+}
@@ -0,0 +1,86 @@
+package com.example.calculator;
+
+/**
+ * BatchEvaluator evaluates one compiled expression over columns of variable
+ * values. Rows are processed in fixed-size blocks and the opcode program runs
+ * once per block, so interpreter dispatch is amortised over the whole block.
+ * An instance owns its scratch columns and must not be shared between threads.
+ */
+public final class BatchEvaluator {
+    
+    public static final int DEFAULT_BLOCK_SIZE = 256;
+    
+    private final int blockSize;
+    private double[][] stack = new double[0][];
+    private final boolean[] failed;
+    
+    public BatchEvaluator() {
+        this(DEFAULT_BLOCK_SIZE);
+    }
+    
+    /**
+     * @param blockSize Number of rows processed per pass over the program
+     */
+    public BatchEvaluator(int blockSize) {
+        if (blockSize <= 0) {
+            throw new IllegalArgumentException("Block size must be positive");
+        }
+        this.blockSize = blockSize;
+        this.failed = new boolean[blockSize];
+    }
+    
+    /**
+     * Evaluates the expression for every row of the columns.
+     * @param expression The compiled expression
+     * @param columns One column per variable slot, each at least results.length long
+     * @param results Receives one result per row; Double.NaN marks rows with errors
+     */
+    public void evaluate(CompiledExpression expression, double[][] columns, double[] results) {
+        evaluate(expression, columns, results, 0, results.length);
+    }
+    
+    /**
+     * Evaluates the expression for rows [from, to) of the columns.
+     * @param expression The compiled expression
+     * @param columns One column per variable slot, each at least to long
+     * @param results Receives one result per row at the row's index
+     * @param from First row, inclusive
+     * @param to Last row, exclusive
+     */
+    public void evaluate(CompiledExpression expression, double[][] columns, double[] results, int from, int to) {
+        checkArguments(expression, columns, results, from, to);
+        ExpressionProgram program = expression.program();
+        ensureStack(program.frameSize());
+        
+        for (int offset = from; offset < to; offset += blockSize) {
+            int length = Math.min(blockSize, to - offset);
+            program.executeBlock(columns, offset, length, stack, failed, results);
+        }
+    }
+    
+    private void ensureStack(int depth) {
+        if (stack.length < depth) {
+            double[][] grown = new double[depth][];
+            System.arraycopy(stack, 0, grown, 0, stack.length);
+            for (int i = stack.length; i < depth; i++) {
+                grown[i] = new double[blockSize];
+            }
+            stack = grown;
+        }
+    }
+    
+    static void checkArguments(CompiledExpression expression, double[][] columns, double[] results,
+                               int from, int to) {
+        if (from < 0 || to > results.length || from > to) {
+            throw new IndexOutOfBoundsException("Invalid row range [" + from + ", " + to + ")");
+        }
+        if (columns.length < expression.getVariableCount()) {
+            throw new IllegalArgumentException("Expected " + expression.getVariableCount() + " columns");
+        }
+        for (int i = 0; i < expression.getVariableCount(); i++) {
+            if (columns[i].length < to) {
+                throw new IllegalArgumentException("Column " + i + " is shorter than " + to + " rows");
+            }
+        }
+    }
+}
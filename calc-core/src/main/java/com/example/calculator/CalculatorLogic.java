@@ -0,0 +1,439 @@
+package com.example.calculator;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * CalculatorLogic handles all mathematical operations and expression evaluation.
+ * Implements PEMDAS (Parentheses, Exponents, Multiplication/Division, Addition/Subtraction)
+ * order of operations with proper error handling.
+ */
+public class CalculatorLogic {
+    
+    // Decimal places shown in formatted results
+    private static final int RESULT_FRACTION_DIGITS = 10;
+    
+    // Result formatter reused by formatting on the same thread
+    private static final ThreadLocal<DoubleFormatter> RESULT_FORMATTER = new ThreadLocal<DoubleFormatter>() {
+        @Override
+        protected DoubleFormatter initialValue() {
+            return new DoubleFormatter(DoubleFormatter.MAX_SIGNIFICANT_DIGITS, RESULT_FRACTION_DIGITS);
+        }
+    };
+    
+    // Optional cache of compiled plans; null when caching is disabled
+    private static volatile ExpressionCache cache;
+    
+    // Budget every expression is scanned against before it is compiled
+    private static volatile EvaluationLimits limits = EvaluationLimits.NONE;
+    
+    // Whether newly compiled expressions also get a closure tree to evaluate with
+    private static volatile boolean closureEvaluation;
+    
+    // Error holder for closure evaluations that only return a double
+    private static final ThreadLocal<EvaluationResult> CLOSURE_RESULT = new ThreadLocal<EvaluationResult>() {
+        @Override
+        protected EvaluationResult initialValue() {
+            return new EvaluationResult();
+        }
+    };
+    
+    // Error holder for evaluations through the plan cache that only return a double
+    private static final ThreadLocal<EvaluationResult> CACHED_RESULT = new ThreadLocal<EvaluationResult>() {
+        @Override
+        protected EvaluationResult initialValue() {
+            return new EvaluationResult();
+        }
+    };
+    
+    /**
+     * Evaluates a mathematical expression string and returns the result.
+     * @param expression The mathematical expression to evaluate
+     * @return The result as a double, or Double.NaN for errors
+     */
+    public static double evaluate(String expression) {
+        if (expression == null) {
+            return 0.0;
+        }
+        return evaluate(expression, 0, expression.length());
+    }
+    
+    /**
+     * Evaluates the expression held in src[start, end), reading the
+     * characters in place instead of copying them into a String.
+     * @param src Text holding the expression, such as a StringBuilder or a CharBuffer
+     * @param start Index of the first character of the expression
+     * @param end Index after the last character of the expression
+     * @return The result as a double, 0 for blank text, or Double.NaN for errors
+     * @throws IndexOutOfBoundsException if the range is outside src
+     */
+    public static double evaluate(CharSequence src, int start, int end) {
+        if (cache == null) {
+            return Evaluator.forCurrentThread().evaluate(src, start, end);
+        }
+        EvaluationResult result = CACHED_RESULT.get();
+        evaluate(src, start, end, result);
+        return result.getValue();
+    }
+    
+    /**
+     * Evaluates an expression without throwing, reporting the outcome through
+     * a reusable holder. Invalid input costs no more than valid input, since
+     * no exception is created for it.
+     * @param expression The mathematical expression to evaluate
+     * @param result Receives the value, or the error status and position
+     * @return true if the expression evaluated to a finite number
+     */
+    public static boolean evaluate(String expression, EvaluationResult result) {
+        if (expression == null) {
+            return result.fail(EvaluationResult.EMPTY, -1);
+        }
+        return evaluate(expression, 0, expression.length(), result);
+    }
+    
+    /**
+     * Evaluates the expression held in src[start, end) without throwing.
+     * Without a cache, the expression is compiled and run in this thread's
+     * Evaluator, which allocates nothing once its buffers have grown. On a
+     * cache hit, no String is created.
+     * @param src Text holding the expression
+     * @param start Index of the first character of the expression
+     * @param end Index after the last character of the expression
+     * @param result Receives the value, or the error status and a position relative to start
+     * @return true if the expression evaluated to a finite number
+     * @throws IndexOutOfBoundsException if the range is outside src
+     */
+    public static boolean evaluate(CharSequence src, int start, int end, EvaluationResult result) {
+        ExpressionCache planCache = cache;
+        if (planCache == null) {
+            // Nothing will keep the plan, so run it straight from the evaluator's buffers
+            return Evaluator.forCurrentThread().evaluate(src, start, end, result);
+        }
+        
+        checkRange(src, start, end);
+        if (!limits.admitLength(end - start, result)) {
+            return false;
+        }
+        if (isBlank(src, start, end)) {
+            return result.fail(EvaluationResult.EMPTY, -1);
+        }
+        CompiledExpression compiled = planCache.compile(src, start, end, result);
+        if (compiled == null) {
+            return false;
+        }
+        if (compiled.evaluate(CompiledExpression.NO_SLOTS, result)) {
+            return true;
+        }
+        if (result.getErrorPosition() >= 0) {
+            // A cached plan may come from the same text with different spacing
+            result.fail(result.getStatus(), ExpressionCache.translatePosition(
+                    compiled.getExpression(), result.getErrorPosition(), src, start, end));
+        }
+        return false;
+    }
+    
+    /**
+     * Compiles an expression once so it can be evaluated many times.
+     * Goes through the installed ExpressionCache, if any.
+     * @param expression The mathematical expression to compile
+     * @return An immutable, thread-safe compiled expression
+     * @throws IllegalArgumentException if the expression is empty or malformed
+     */
+    public static CompiledExpression compile(String expression) {
+        ExpressionCache planCache = cache;
+        return planCache != null ? planCache.compile(expression) : compileExpression(expression);
+    }
+    
+    /**
+     * Compiles the expression held in src[start, end).
+     * Goes through the installed ExpressionCache, if any; the text is only
+     * copied when a new plan is compiled.
+     * @return An immutable, thread-safe compiled expression
+     * @throws IllegalArgumentException if the expression is empty or malformed
+     * @throws IndexOutOfBoundsException if the range is outside src
+     */
+    public static CompiledExpression compile(CharSequence src, int start, int end) {
+        EvaluationResult result = new EvaluationResult();
+        CompiledExpression compiled = compile(src, start, end, result);
+        if (compiled == null) {
+            throw new IllegalArgumentException(result.getMessage());
+        }
+        return compiled;
+    }
+    
+    /**
+     * Compiles an expression without throwing.
+     * Goes through the installed ExpressionCache, if any.
+     * @param expression The mathematical expression to compile
+     * @param result Receives the error status and position if compilation fails
+     * @return The compiled expression, or null if the expression is empty or malformed
+     */
+    public static CompiledExpression compile(String expression, EvaluationResult result) {
+        if (expression == null) {
+            result.fail(EvaluationResult.EMPTY, -1);
+            return null;
+        }
+        return compile(expression, 0, expression.length(), result);
+    }
+    
+    /**
+     * Compiles the expression held in src[start, end) without throwing.
+     * Goes through the installed ExpressionCache, if any.
+     * @param result Receives the error status and a position relative to start if compilation fails
+     * @return The compiled expression, or null if the expression is empty or malformed
+     * @throws IndexOutOfBoundsException if the range is outside src
+     */
+    public static CompiledExpression compile(CharSequence src, int start, int end, EvaluationResult result) {
+        checkRange(src, start, end);
+        ExpressionCache planCache = cache;
+        return planCache != null ? planCache.compile(src, start, end, result)
+                : compileExpression(src, start, end, result);
+    }
+    
+    /**
+     * Compiles an expression template whose variables are bound to fixed slots.
+     * The i-th name is read from slots[i] by CompiledExpression.evaluate(double[]).
+     * Compiled templates are not cached.
+     * @param expression The expression, which may reference the given variables
+     * @param variables The variable names, in slot order
+     * @return An immutable, thread-safe compiled expression
+     * @throws IllegalArgumentException if the expression is malformed or uses an unknown variable
+     */
+    public static CompiledExpression compile(String expression, String... variables) {
+        if (variables == null) {
+            throw new IllegalArgumentException("Variables are null");
+        }
+        return compileExpression(expression, new ArrayList<>(Arrays.asList(variables)), true);
+    }
+    
+    /**
+     * Installs a cache of compiled plans used by compile() and evaluate().
+     * Caching is off by default.
+     * @param expressionCache The cache to use, or null to disable caching
+     */
+    public static void setCache(ExpressionCache expressionCache) {
+        cache = expressionCache;
+    }
+    
+    /**
+     * Returns the installed plan cache, or null if caching is disabled.
+     */
+    public static ExpressionCache getCache() {
+        return cache;
+    }
+    
+    /**
+     * Sets the limits that expressions compiled or evaluated from now on must
+     * stay within. Expressions over a limit are rejected while they are
+     * scanned, with one of the EvaluationResult statuses for limits, before
+     * any parsing or evaluation work is done. The default is
+     * EvaluationLimits.NONE; servers that evaluate text from clients should
+     * set EvaluationLimits.UNTRUSTED or their own limits. Evaluators created
+     * with their own limits ignore this setting. Plans already compiled or
+     * cached were admitted under the limits in force at the time; clear the
+     * cache after tightening the limits to check cached plans again.
+     * @param evaluationLimits The limits to apply, EvaluationLimits.NONE to disable them
+     * @throws IllegalArgumentException if evaluationLimits is null
+     */
+    public static void setLimits(EvaluationLimits evaluationLimits) {
+        if (evaluationLimits == null) {
+            throw new IllegalArgumentException("Limits are null");
+        }
+        limits = evaluationLimits;
+    }
+    
+    public static EvaluationLimits getLimits() {
+        return limits;
+    }
+    
+    /**
+     * Selects how expressions compiled from now on are evaluated: by the
+     * postfix interpreter, the default, or by a closure tree of small node
+     * objects built from the same program, which the JIT can inline into
+     * straight-line code. Both give the same values and errors. Expressions
+     * already compiled or cached keep the evaluator they were compiled with,
+     * and one-off evaluate() calls without a cache always interpret, since
+     * building a tree costs more than running the program once. Expressions
+     * nested more than ClosureCompiler.MAX_DEPTH levels deep are interpreted too.
+     * @param enabled true to build closure trees, false to interpret
+     */
+    public static void setClosureEvaluation(boolean enabled) {
+        closureEvaluation = enabled;
+    }
+    
+    public static boolean isClosureEvaluation() {
+        return closureEvaluation;
+    }
+    
+    /**
+     * Compiles an expression without consulting the cache.
+     * Variables get slots in order of first appearance.
+     */
+    static CompiledExpression compileExpression(String expression) {
+        return compileExpression(expression, new ArrayList<String>(), false);
+    }
+    
+    /**
+     * Compiles src[start, end) without consulting the cache or throwing.
+     * @return The compiled expression, or null on error
+     */
+    static CompiledExpression compileExpression(CharSequence src, int start, int end, EvaluationResult result) {
+        return Evaluator.forCurrentThread().compile(src, start, end, result);
+    }
+    
+    /**
+     * Compiles an expression, resolving variable names against the given list.
+     * @param variables Known variable names in slot order; extended with new names unless fixed
+     * @param fixed Whether names not already in the list are rejected
+     * @throws IllegalArgumentException if the expression is empty or malformed
+     */
+    private static CompiledExpression compileExpression(String expression, List<String> variables, boolean fixed) {
+        if (expression == null) {
+            throw new IllegalArgumentException("Expression is null");
+        }
+        
+        EvaluationResult result = new EvaluationResult();
+        ExpressionProgram program = compileProgram(expression, 0, expression.length(), variables, fixed, result);
+        if (program == null) {
+            throw new IllegalArgumentException(result.getMessage());
+        }
+        return newCompiledExpression(expression, program, variables);
+    }
+    
+    /**
+     * Wraps a program, adding its closure tree if closure evaluation is selected.
+     */
+    static CompiledExpression newCompiledExpression(String expression, ExpressionProgram program,
+                                                    List<String> variables) {
+        ClosureNode closure = closureEvaluation ? ClosureCompiler.compile(program) : null;
+        return new CompiledExpression(expression, program, closure, variables.toArray(new String[0]));
+    }
+    
+    /**
+     * Compiles src[start, end) to a program without throwing.
+     * @param variables Known variable names in slot order; extended with new names unless fixed
+     * @param fixed Whether names not already in the list are rejected
+     * @param result Receives the error status and position if compilation fails
+     * @return The program, or null on error
+     */
+    private static ExpressionProgram compileProgram(CharSequence src, int start, int end,
+                                                    List<String> variables, boolean fixed,
+                                                    EvaluationResult result) {
+        // Scanner, parser, trees and builder are this thread's, reused across compilations
+        return Evaluator.forCurrentThread().compileProgram(src, start, end, variables, fixed, result);
+    }
+    
+    /**
+     * Evaluates a postfix program on this thread's scratch operand stack.
+     */
+    static double evaluatePostfix(ExpressionProgram program, double[] slots) {
+        return program.execute(slots, operandStack(program));
+    }
+    
+    /**
+     * Evaluates a postfix program, recording its value or error in the holder.
+     * @return true if the program evaluated to a finite number
+     */
+    static boolean evaluatePostfix(ExpressionProgram program, double[] slots, EvaluationResult result) {
+        result.reset();
+        double value = program.execute(slots, operandStack(program), result);
+        return result.isOk() && result.complete(value);
+    }
+    
+    /**
+     * Evaluates a closure tree on this thread's scratch registers.
+     * @return The result, or Double.NaN for division by zero or the square root of a negative number
+     */
+    static double evaluateClosure(ClosureNode closure, int registers, double[] slots) {
+        EvaluationResult result = CLOSURE_RESULT.get();
+        result.reset();
+        double value = closure.evaluate(slots, scratch(registers), result);
+        return result.isOk() ? value : Double.NaN;
+    }
+    
+    /**
+     * Evaluates a closure tree, recording its value or first error in the holder.
+     * @return true if the tree evaluated to a finite number
+     */
+    static boolean evaluateClosure(ClosureNode closure, int registers, double[] slots, EvaluationResult result) {
+        result.reset();
+        double value = closure.evaluate(slots, scratch(registers), result);
+        return result.isOk() && result.complete(value);
+    }
+    
+    /**
+     * Returns this thread's scratch stack, large enough for the program.
+     */
+    static double[] operandStack(ExpressionProgram program) {
+        return scratch(program.frameSize());
+    }
+    
+    /**
+     * Returns this thread's scratch array, grown to at least the given size.
+     */
+    private static double[] scratch(int size) {
+        return Evaluator.forCurrentThread().scratch(size);
+    }
+    
+    /**
+     * Returns true if the range has no characters above a space, like trim().isEmpty().
+     */
+    static boolean isBlank(CharSequence src, int start, int end) {
+        for (int i = start; i < end; i++) {
+            if (src.charAt(i) > ' ') {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    static void checkRange(CharSequence src, int start, int end) {
+        if (start < 0 || end > src.length() || start > end) {
+            throw new IndexOutOfBoundsException("Invalid range [" + start + ", " + end + ") of length " + src.length());
+        }
+    }
+    
+    /**
+     * Formats a double result to a clean string representation.
+     * Prints the shortest decimal that round-trips, rounded to at most
+     * ten decimal places, without trailing zeros or exponent notation.
+     * @param result The result to format
+     * @return Formatted string or "Error" for invalid results
+     */
+    public static String formatResult(double result) {
+        if (Double.isNaN(result) || Double.isInfinite(result)) {
+            return "Error";
+        }
+        return RESULT_FORMATTER.get().format(result);
+    }
+    
+    /**
+     * Appends a formatted result to the builder without intermediate strings.
+     * @param result The result to format
+     * @param out The builder to append to
+     * @return The builder, with the formatted result or "Error" appended
+     */
+    public static StringBuilder formatResult(double result, StringBuilder out) {
+        if (Double.isNaN(result) || Double.isInfinite(result)) {
+            return out.append("Error");
+        }
+        return RESULT_FORMATTER.get().format(result, out);
+    }
+    
+    /**
+     * Checks if an expression is valid (properly formed): known symbols,
+     * well-formed numbers, operators between operands, and balanced parentheses.
+     * This runs the compiler, so callers that go on to evaluate should call
+     * evaluate(String, EvaluationResult) instead and scan the text only once.
+     * @param expression The expression to validate
+     * @return true if valid, false otherwise
+     */
+    public static boolean isValidExpression(String expression) {
+        if (expression == null || expression.isEmpty()) {
+            return false;
+        }
+        
+        return compile(expression, new EvaluationResult()) != null;
+    }
+}
\ No newline at end of file
@@ -0,0 +1,119 @@
+package com.example.calculator;
+
+/**
+ * ClosureCompiler turns a postfix program into a tree of ClosureNodes.
+ * It runs the program symbolically: every instruction pops the nodes of its
+ * operands and pushes the node that computes it, so the node left on the
+ * stack at the end is the root. Building from the program rather than the
+ * syntax tree lets cached plans be compiled too, and keeps the optimizer's
+ * rewrites and shared subexpressions.
+ *
+ * Binary operators with a constant right operand get their own node classes
+ * that keep the constant in a field, and a division by a non-zero constant
+ * needs no check at all.
+ * Closure trees evaluate recursively, so programs nested deeper than
+ * MAX_DEPTH are not compiled and stay with the interpreter, whose stack is
+ * an array.
+ */
+final class ClosureCompiler {
+
+    // Deepest tree built; keeps evaluation well within a small thread stack
+    static final int MAX_DEPTH = 500;
+
+    private ClosureCompiler() {
+    }
+
+    /**
+     * Builds the closure tree computing the same value and errors as the program.
+     * @return The root node, or null if the tree would be deeper than MAX_DEPTH
+     */
+    static ClosureNode compile(ExpressionProgram program) {
+        ClosureNode[] stack = new ClosureNode[program.maxStack()];
+        // Height of the tree at each stack entry
+        int[] heights = new int[program.maxStack()];
+        int sp = 0;
+        int pc = 0;
+
+        while (pc < program.codeLength()) {
+            int opcode = program.codeAt(pc);
+            int position = program.positionAt(pc);
+            switch (opcode) {
+                case Opcodes.CONST:
+                    stack[sp++] = new ClosureNode.Constant(program.constantAt(program.codeAt(pc + 1)));
+                    break;
+                case Opcodes.LOAD:
+                    stack[sp++] = new ClosureNode.Load(program.codeAt(pc + 1));
+                    break;
+                case Opcodes.STORE:
+                    stack[sp - 1] = new ClosureNode.Store(stack[sp - 1], program.codeAt(pc + 1));
+                    break;
+                case Opcodes.RECALL:
+                    stack[sp++] = new ClosureNode.Recall(program.codeAt(pc + 1));
+                    break;
+                case Opcodes.NEG:
+                    stack[sp - 1] = new ClosureNode.Negate(stack[sp - 1]);
+                    break;
+                case Opcodes.SQRT:
+                    stack[sp - 1] = new ClosureNode.SquareRoot(stack[sp - 1], position);
+                    break;
+                case Opcodes.SQUARE:
+                    stack[sp - 1] = new ClosureNode.Square(stack[sp - 1]);
+                    break;
+                case Opcodes.CUBE:
+                    stack[sp - 1] = new ClosureNode.Cube(stack[sp - 1]);
+                    break;
+                default:
+                    sp--;
+                    stack[sp - 1] = binary(opcode, stack[sp - 1], stack[sp], position);
+                    heights[sp - 1] = Math.max(heights[sp - 1], heights[sp]);
+                    break;
+            }
+            // Leaves start at height 1; every other instruction wraps the top entry
+            if (opcode == Opcodes.CONST || opcode == Opcodes.LOAD || opcode == Opcodes.RECALL) {
+                heights[sp - 1] = 1;
+            } else if (++heights[sp - 1] > MAX_DEPTH) {
+                return null;
+            }
+            pc += Opcodes.hasOperand(opcode) ? 2 : 1;
+        }
+        return stack[0];
+    }
+
+    private static ClosureNode binary(int opcode, ClosureNode left, ClosureNode right, int position) {
+        if (right instanceof ClosureNode.Constant) {
+            double constant = ((ClosureNode.Constant) right).value();
+            switch (opcode) {
+                case Opcodes.ADD:
+                    return new ClosureNode.AddConstant(left, constant);
+                case Opcodes.SUB:
+                    return new ClosureNode.AddConstant(left, -constant);
+                case Opcodes.MUL:
+                    return new ClosureNode.MultiplyConstant(left, constant);
+                case Opcodes.DIV:
+                    if (constant != 0) {
+                        return new ClosureNode.DivideConstant(left, constant);
+                    }
+                    break;
+                case Opcodes.POW:
+                    return new ClosureNode.PowerConstant(left, constant);
+                default:
+                    break;
+            }
+        }
+
+        switch (opcode) {
+            case Opcodes.ADD:
+                return new ClosureNode.Add(left, right);
+            case Opcodes.SUB:
+                return new ClosureNode.Subtract(left, right);
+            case Opcodes.MUL:
+                return new ClosureNode.Multiply(left, right);
+            case Opcodes.DIV:
+                return new ClosureNode.Divide(left, right, position);
+            case Opcodes.POW:
+                return new ClosureNode.Power(left, right);
+            default:
+                throw new IllegalStateException("Unknown opcode: " + opcode);
+        }
+    }
+}
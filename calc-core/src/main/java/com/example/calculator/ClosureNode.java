@@ -0,0 +1,326 @@
+package com.example.calculator;
+
+/**
+ * ClosureNode is one node of a closure tree: a compiled expression
+ * represented as small objects, one final class per operator and operand
+ * shape, each computing its value by calling its children directly.
+ * Constants, variable slots and register indices are fields, so a node never
+ * looks anything up, and the JIT can inline a tree whose call sites each see
+ * a single node class.
+ *
+ * Operands are evaluated left to right, exactly in the order the postfix
+ * program runs them. Evaluation does not stop at the first error; the error
+ * is recorded in the EvaluationResult, which keeps only the first one, and
+ * the caller discards the value.
+ * This is an abstract class rather than a java.util.function interface so
+ * that it also runs on Android versions without java.util.function.
+ * Nodes are immutable and safe to share between threads.
+ */
+abstract class ClosureNode {
+
+    /**
+     * Computes the value of this node.
+     * @param slots Variable values, indexed by slot
+     * @param registers Scratch values of shared subexpressions, indexed by register
+     * @param result Receives the status and source position of the first error
+     */
+    abstract double evaluate(double[] slots, double[] registers, EvaluationResult result);
+
+    /**
+     * Records an error unless an earlier one already was, and returns NaN.
+     */
+    static double fail(EvaluationResult result, int status, int position) {
+        if (result.isOk()) {
+            result.fail(status, position);
+        }
+        return Double.NaN;
+    }
+
+    static final class Constant extends ClosureNode {
+
+        private final double value;
+
+        Constant(double value) {
+            this.value = value;
+        }
+
+        double value() {
+            return value;
+        }
+
+        @Override
+        double evaluate(double[] slots, double[] registers, EvaluationResult result) {
+            return value;
+        }
+    }
+
+    static final class Load extends ClosureNode {
+
+        private final int slot;
+
+        Load(int slot) {
+            this.slot = slot;
+        }
+
+        @Override
+        double evaluate(double[] slots, double[] registers, EvaluationResult result) {
+            return slots[slot];
+        }
+    }
+
+    /**
+     * Computes a shared subexpression and keeps its value for later Recall nodes.
+     */
+    static final class Store extends ClosureNode {
+
+        private final ClosureNode operand;
+        private final int register;
+
+        Store(ClosureNode operand, int register) {
+            this.operand = operand;
+            this.register = register;
+        }
+
+        @Override
+        double evaluate(double[] slots, double[] registers, EvaluationResult result) {
+            double x = operand.evaluate(slots, registers, result);
+            registers[register] = x;
+            return x;
+        }
+    }
+
+    static final class Recall extends ClosureNode {
+
+        private final int register;
+
+        Recall(int register) {
+            this.register = register;
+        }
+
+        @Override
+        double evaluate(double[] slots, double[] registers, EvaluationResult result) {
+            return registers[register];
+        }
+    }
+
+    static final class Negate extends ClosureNode {
+
+        private final ClosureNode operand;
+
+        Negate(ClosureNode operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        double evaluate(double[] slots, double[] registers, EvaluationResult result) {
+            return -operand.evaluate(slots, registers, result);
+        }
+    }
+
+    static final class SquareRoot extends ClosureNode {
+
+        private final ClosureNode operand;
+        private final int position;
+
+        SquareRoot(ClosureNode operand, int position) {
+            this.operand = operand;
+            this.position = position;
+        }
+
+        @Override
+        double evaluate(double[] slots, double[] registers, EvaluationResult result) {
+            double x = operand.evaluate(slots, registers, result);
+            if (x < 0) {
+                return fail(result, EvaluationResult.NEGATIVE_SQUARE_ROOT, position);
+            }
+            return Math.sqrt(x);
+        }
+    }
+
+    static final class Square extends ClosureNode {
+
+        private final ClosureNode operand;
+
+        Square(ClosureNode operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        double evaluate(double[] slots, double[] registers, EvaluationResult result) {
+            double x = operand.evaluate(slots, registers, result);
+            return x * x;
+        }
+    }
+
+    static final class Cube extends ClosureNode {
+
+        private final ClosureNode operand;
+
+        Cube(ClosureNode operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        double evaluate(double[] slots, double[] registers, EvaluationResult result) {
+            double x = operand.evaluate(slots, registers, result);
+            return x * x * x;
+        }
+    }
+
+    static final class Add extends ClosureNode {
+
+        private final ClosureNode left;
+        private final ClosureNode right;
+
+        Add(ClosureNode left, ClosureNode right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double evaluate(double[] slots, double[] registers, EvaluationResult result) {
+            return left.evaluate(slots, registers, result) + right.evaluate(slots, registers, result);
+        }
+    }
+
+    static final class Subtract extends ClosureNode {
+
+        private final ClosureNode left;
+        private final ClosureNode right;
+
+        Subtract(ClosureNode left, ClosureNode right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double evaluate(double[] slots, double[] registers, EvaluationResult result) {
+            return left.evaluate(slots, registers, result) - right.evaluate(slots, registers, result);
+        }
+    }
+
+    static final class Multiply extends ClosureNode {
+
+        private final ClosureNode left;
+        private final ClosureNode right;
+
+        Multiply(ClosureNode left, ClosureNode right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double evaluate(double[] slots, double[] registers, EvaluationResult result) {
+            return left.evaluate(slots, registers, result) * right.evaluate(slots, registers, result);
+        }
+    }
+
+    static final class Divide extends ClosureNode {
+
+        private final ClosureNode left;
+        private final ClosureNode right;
+        private final int position;
+
+        Divide(ClosureNode left, ClosureNode right, int position) {
+            this.left = left;
+            this.right = right;
+            this.position = position;
+        }
+
+        @Override
+        double evaluate(double[] slots, double[] registers, EvaluationResult result) {
+            double x = left.evaluate(slots, registers, result);
+            double y = right.evaluate(slots, registers, result);
+            if (y == 0) {
+                return fail(result, EvaluationResult.DIVISION_BY_ZERO, position);
+            }
+            return x / y;
+        }
+    }
+
+    static final class Power extends ClosureNode {
+
+        private final ClosureNode left;
+        private final ClosureNode right;
+
+        Power(ClosureNode left, ClosureNode right) {
+            this.left = left;
+            this.right = right;
+        }
+
+        @Override
+        double evaluate(double[] slots, double[] registers, EvaluationResult result) {
+            return Math.pow(left.evaluate(slots, registers, result), right.evaluate(slots, registers, result));
+        }
+    }
+
+    /**
+     * x + c, and x − c as x + (−c), which IEEE 754 defines to be the same.
+     */
+    static final class AddConstant extends ClosureNode {
+
+        private final ClosureNode left;
+        private final double constant;
+
+        AddConstant(ClosureNode left, double constant) {
+            this.left = left;
+            this.constant = constant;
+        }
+
+        @Override
+        double evaluate(double[] slots, double[] registers, EvaluationResult result) {
+            return left.evaluate(slots, registers, result) + constant;
+        }
+    }
+
+    static final class MultiplyConstant extends ClosureNode {
+
+        private final ClosureNode left;
+        private final double constant;
+
+        MultiplyConstant(ClosureNode left, double constant) {
+            this.left = left;
+            this.constant = constant;
+        }
+
+        @Override
+        double evaluate(double[] slots, double[] registers, EvaluationResult result) {
+            return left.evaluate(slots, registers, result) * constant;
+        }
+    }
+
+    /**
+     * x ÷ c for a constant that is not zero, so no check is needed.
+     */
+    static final class DivideConstant extends ClosureNode {
+
+        private final ClosureNode left;
+        private final double constant;
+
+        DivideConstant(ClosureNode left, double constant) {
+            this.left = left;
+            this.constant = constant;
+        }
+
+        @Override
+        double evaluate(double[] slots, double[] registers, EvaluationResult result) {
+            return left.evaluate(slots, registers, result) / constant;
+        }
+    }
+
+    static final class PowerConstant extends ClosureNode {
+
+        private final ClosureNode left;
+        private final double constant;
+
+        PowerConstant(ClosureNode left, double constant) {
+            this.left = left;
+            this.constant = constant;
+        }
+
+        @Override
+        double evaluate(double[] slots, double[] registers, EvaluationResult result) {
+            return Math.pow(left.evaluate(slots, registers, result), constant);
+        }
+    }
+}
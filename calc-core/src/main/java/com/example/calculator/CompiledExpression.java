@@ -0,0 +1,131 @@
+package com.example.calculator;
+
+/**
+ * CompiledExpression is an expression that has already been parsed and
+ * compiled to a postfix program, and to a closure tree when closure
+ * evaluation was selected at compile time. It is immutable, apart from the
+ * split plan ParallelEvaluator builds on first use, and safe to share between
+ * threads; each evaluation runs on the calling thread's scratch stack.
+ * Variables in the expression are bound to slots at compile time and read
+ * from the array passed to evaluate(double[]).
+ */
+public final class CompiledExpression {
+    
+    static final double[] NO_SLOTS = new double[0];
+    
+    private final String expression;
+    private final ExpressionProgram program;
+    // Evaluates in place of the interpreter when not null
+    private final ClosureNode closure;
+    private final String[] variables;
+    // Built by the first parallel evaluation of this expression
+    private volatile SplitPlan splitPlan;
+    
+    CompiledExpression(String expression, ExpressionProgram program, ClosureNode closure, String[] variables) {
+        this.expression = expression;
+        this.program = program;
+        this.closure = closure;
+        this.variables = variables;
+    }
+    
+    /**
+     * Evaluates an expression that has no variables.
+     * @return The result as a double, or Double.NaN for errors
+     * @throws IllegalArgumentException if the expression has variables
+     */
+    public double evaluate() {
+        return evaluate(NO_SLOTS);
+    }
+    
+    /**
+     * Evaluates the expression with the given variable values.
+     * @param slots Variable values in slot order, see getVariableNames()
+     * @return The result as a double, or Double.NaN for errors
+     * @throws IllegalArgumentException if fewer values than variables are given
+     */
+    public double evaluate(double[] slots) {
+        if (slots.length < variables.length) {
+            throw new IllegalArgumentException("Expected " + variables.length + " variable values");
+        }
+        if (closure != null) {
+            return CalculatorLogic.evaluateClosure(closure, program.registers(), slots);
+        }
+        return CalculatorLogic.evaluatePostfix(program, slots);
+    }
+    
+    /**
+     * Evaluates the expression without throwing, reporting errors through the holder.
+     * A missing variable value is reported as UNBOUND_VARIABLE at its first use.
+     * @param slots Variable values in slot order, see getVariableNames()
+     * @param result Receives the value, or the error status and position
+     * @return true if the evaluation succeeded
+     */
+    public boolean evaluate(double[] slots, EvaluationResult result) {
+        if (slots.length < variables.length) {
+            return result.fail(EvaluationResult.UNBOUND_VARIABLE, program.positionOfLoad(slots.length));
+        }
+        if (closure != null) {
+            return CalculatorLogic.evaluateClosure(closure, program.registers(), slots, result);
+        }
+        return CalculatorLogic.evaluatePostfix(program, slots, result);
+    }
+    
+    /**
+     * Returns the slot index of a variable, or -1 if the expression does not use it.
+     */
+    public int slotOf(String name) {
+        for (int i = 0; i < variables.length; i++) {
+            if (variables[i].equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+    
+    /**
+     * Returns the variable names in slot order.
+     */
+    public String[] getVariableNames() {
+        return variables.clone();
+    }
+    
+    public int getVariableCount() {
+        return variables.length;
+    }
+    
+    /**
+     * Returns the source text this expression was compiled from.
+     */
+    public String getExpression() {
+        return expression;
+    }
+    
+    ExpressionProgram program() {
+        return program;
+    }
+    
+    /**
+     * Returns the plan for evaluating this expression in parallel parts of at
+     * least the given number of instructions, building it if needed.
+     */
+    SplitPlan splitPlan(int threshold) {
+        SplitPlan plan = splitPlan;
+        if (plan == null || plan.threshold() != threshold) {
+            plan = new SplitPlan(program, threshold);
+            splitPlan = plan;
+        }
+        return plan;
+    }
+    
+    /**
+     * Returns the closure tree, or null if this expression is interpreted.
+     */
+    ClosureNode closure() {
+        return closure;
+    }
+    
+    @Override
+    public String toString() {
+        return expression;
+    }
+}
@@ -0,0 +1,178 @@
+package com.example.calculator;
+
+import java.math.BigInteger;
+
+/**
+ * DecimalParser converts a number span produced by ExpressionScanner (digits
+ * with at most one decimal point) straight from the source characters to a
+ * correctly rounded double, without creating a substring.
+ *
+ * Most calculator input takes Clinger's fast path, where the digits and the
+ * power of ten are both exact doubles and one rounding gives the answer.
+ * Everything else goes through the Eisel-Lemire algorithm, which uses a
+ * 128-bit approximation of the power of ten. The rare inputs it cannot
+ * decide (more than 19 significant digits, exact halfway cases, subnormal
+ * results) fall back to Double.parseDouble.
+ */
+final class DecimalParser {
+
+    // Powers of ten that are exactly representable as doubles
+    private static final double[] EXACT_POWERS_OF_TEN = {
+        1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10,
+        1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22
+    };
+
+    private static final long MAX_EXACT_SIGNIFICAND = 1L << 53;
+    private static final int MAX_SIGNIFICANT_DIGITS = 19;
+
+    // Range of decimal exponents covered by the Eisel-Lemire table
+    private static final int MIN_EXPONENT = -348;
+    private static final int MAX_EXPONENT = 347;
+
+    private DecimalParser() {
+    }
+
+    /**
+     * Parses src[start, end), which must hold digits and at most one '.'.
+     */
+    static double parse(CharSequence src, int start, int end) {
+        long significand = 0;
+        int digits = 0;
+        int exponent = 0;
+        boolean afterPoint = false;
+
+        for (int i = start; i < end; i++) {
+            char c = src.charAt(i);
+            if (c == '.') {
+                afterPoint = true;
+                continue;
+            }
+            if (significand == 0 && c == '0') {
+                // Leading zeros carry no information beyond the exponent
+                if (afterPoint) {
+                    exponent--;
+                }
+                continue;
+            }
+            if (digits == MAX_SIGNIFICANT_DIGITS) {
+                return fallback(src, start, end);
+            }
+            significand = significand * 10 + (c - '0');
+            digits++;
+            if (afterPoint) {
+                exponent--;
+            }
+        }
+
+        if (significand == 0) {
+            return 0.0;
+        }
+        if (significand > 0 && significand <= MAX_EXACT_SIGNIFICAND && exponent >= -22 && exponent <= 22) {
+            return exponent >= 0
+                    ? significand * EXACT_POWERS_OF_TEN[exponent]
+                    : significand / EXACT_POWERS_OF_TEN[-exponent];
+        }
+
+        double value = eiselLemire(significand, exponent);
+        return value == value ? value : fallback(src, start, end);
+    }
+
+    /**
+     * Computes significand * 10^exponent for a nonzero significand below 10^19.
+     * @return The correctly rounded double, or NaN when the result cannot be
+     *         decided with 128 bits of precision or is subnormal or infinite
+     */
+    private static double eiselLemire(long significand, int exponent) {
+        if (exponent < MIN_EXPONENT || exponent > MAX_EXPONENT) {
+            return Double.NaN;
+        }
+
+        // Normalize so the top bit of the significand is set
+        int clz = Long.numberOfLeadingZeros(significand);
+        long man = significand << clz;
+        long retExp2 = ((217706L * exponent) >> 16) + 64 + 1023 - clz;
+
+        int index = 2 * (exponent - MIN_EXPONENT);
+        long powerHi = Table.POWERS[index];
+        long powerLo = Table.POWERS[index + 1];
+
+        long xHi = unsignedMultiplyHigh(man, powerHi);
+        long xLo = man * powerHi;
+
+        // Widen the approximation when the low bits may be off by the truncation
+        if ((xHi & 0x1FF) == 0x1FF && unsignedLess(xLo + man, man)) {
+            long yHi = unsignedMultiplyHigh(man, powerLo);
+            long yLo = man * powerLo;
+            long mergedHi = xHi;
+            long mergedLo = xLo + yHi;
+            if (unsignedLess(mergedLo, xLo)) {
+                mergedHi++;
+            }
+            if ((mergedHi & 0x1FF) == 0x1FF && mergedLo + 1 == 0 && unsignedLess(yLo + man, man)) {
+                return Double.NaN;
+            }
+            xHi = mergedHi;
+            xLo = mergedLo;
+        }
+
+        // Shift to 54 bits
+        long msb = xHi >>> 63;
+        long retMantissa = xHi >>> (msb + 9);
+        retExp2 -= 1 ^ msb;
+
+        // An exact halfway case needs the full input to break the tie
+        if (xLo == 0 && (xHi & 0x1FF) == 0 && (retMantissa & 3) == 1) {
+            return Double.NaN;
+        }
+
+        // Round to 53 bits
+        retMantissa += retMantissa & 1;
+        retMantissa >>>= 1;
+        if ((retMantissa >>> 53) > 0) {
+            retMantissa >>>= 1;
+            retExp2++;
+        }
+        if (retExp2 <= 0 || retExp2 >= 0x7FF) {
+            return Double.NaN;
+        }
+        return Double.longBitsToDouble(retExp2 << 52 | retMantissa & 0x000FFFFFFFFFFFFFL);
+    }
+
+    private static double fallback(CharSequence src, int start, int end) {
+        return Double.parseDouble(src.subSequence(start, end).toString());
+    }
+
+    private static boolean unsignedLess(long a, long b) {
+        return (a ^ Long.MIN_VALUE) < (b ^ Long.MIN_VALUE);
+    }
+
+    private static long unsignedMultiplyHigh(long x, long y) {
+        return DoubleFormatter.multiplyHigh(x, y) + ((x >> 63) & y) + ((y >> 63) & x);
+    }
+
+    /**
+     * 128-bit mantissas of 10^e for e in [MIN_EXPONENT, MAX_EXPONENT],
+     * normalized so the top bit is set and truncated, stored as (high, low)
+     * pairs. Built once on first use of the slow path.
+     */
+    private static final class Table {
+
+        static final long[] POWERS = new long[2 * (MAX_EXPONENT - MIN_EXPONENT + 1)];
+
+        static {
+            for (int e = MIN_EXPONENT; e <= MAX_EXPONENT; e++) {
+                BigInteger mantissa;
+                if (e >= 0) {
+                    BigInteger power = BigInteger.TEN.pow(e);
+                    int shift = power.bitLength() - 128;
+                    mantissa = shift > 0 ? power.shiftRight(shift) : power.shiftLeft(-shift);
+                } else {
+                    BigInteger power = BigInteger.TEN.pow(-e);
+                    mantissa = BigInteger.ONE.shiftLeft(127 + power.bitLength()).divide(power);
+                }
+                POWERS[2 * (e - MIN_EXPONENT)] = mantissa.shiftRight(64).longValue();
+                POWERS[2 * (e - MIN_EXPONENT) + 1] = mantissa.longValue();
+            }
+        }
+    }
+}
@@ -0,0 +1,362 @@
+package com.example.calculator;
+
+import java.math.BigInteger;
+
+/**
+ * DoubleFormatter prints doubles in plain decimal notation without going
+ * through String.format or regular expressions.
+ *
+ * The digits come from the Schubfach algorithm (R. Giulietti, "The Schubfach
+ * way to render doubles"), which yields the shortest decimal that rounds back
+ * to the same double. They are then rounded half-up to the configured number
+ * of significant and fraction digits, trailing zeros are dropped, and the
+ * result is written into a reusable char buffer.
+ * An instance is not thread-safe.
+ */
+public final class DoubleFormatter {
+
+    /** Enough significant digits to print every double exactly as parsed. */
+    public static final int MAX_SIGNIFICANT_DIGITS = 17;
+
+    /** Enough fraction digits to print the smallest subnormal double. */
+    public static final int MAX_FRACTION_DIGITS = 340;
+
+    // Binary64 layout
+    private static final int P = 53;
+    private static final int Q_MIN = -1074;
+    private static final long C_MIN = 1L << (P - 1);
+    private static final long T_MASK = C_MIN - 1;
+    private static final int BQ_MASK = 0x7FF;
+    private static final long C_TINY = 3;
+    private static final long MASK_63 = (1L << 63) - 1;
+
+    // Range of decimal exponents k covered by the g tables
+    private static final int K_MIN = -324;
+    private static final int K_MAX = 292;
+
+    private final int maxSignificantDigits;
+    private final int maxFractionDigits;
+
+    // Decimal significand digits, most significant first
+    private final byte[] digits = new byte[MAX_SIGNIFICANT_DIGITS + 1];
+    // Sign, up to 309 integer digits or 340 fraction digits, and the point
+    private final char[] buffer = new char[2 + 309 + MAX_FRACTION_DIGITS];
+
+    // Output of toDecimal: the value is significand * 10^exponent
+    private long significand;
+    private int exponent;
+
+    /**
+     * Creates a formatter that prints the shortest round-trip representation.
+     */
+    public DoubleFormatter() {
+        this(MAX_SIGNIFICANT_DIGITS, MAX_FRACTION_DIGITS);
+    }
+
+    /**
+     * @param maxSignificantDigits Significant digits to keep, from 1 to 17
+     * @param maxFractionDigits Digits to keep after the decimal point, from 0 to 340
+     */
+    public DoubleFormatter(int maxSignificantDigits, int maxFractionDigits) {
+        if (maxSignificantDigits < 1 || maxSignificantDigits > MAX_SIGNIFICANT_DIGITS) {
+            throw new IllegalArgumentException("Significant digits must be between 1 and " + MAX_SIGNIFICANT_DIGITS);
+        }
+        if (maxFractionDigits < 0 || maxFractionDigits > MAX_FRACTION_DIGITS) {
+            throw new IllegalArgumentException("Fraction digits must be between 0 and " + MAX_FRACTION_DIGITS);
+        }
+        this.maxSignificantDigits = maxSignificantDigits;
+        this.maxFractionDigits = maxFractionDigits;
+    }
+
+    /**
+     * Formats a value as a new string.
+     */
+    public String format(double value) {
+        int length = write(value);
+        return new String(buffer, 0, length);
+    }
+
+    /**
+     * Appends a formatted value to the builder.
+     * @return The builder, for chaining
+     */
+    public StringBuilder format(double value, StringBuilder out) {
+        int length = write(value);
+        return out.append(buffer, 0, length);
+    }
+
+    /**
+     * Writes the formatted value into the buffer and returns its length.
+     */
+    private int write(double value) {
+        if (value != value) {
+            return copy("NaN");
+        }
+        if (value == Double.POSITIVE_INFINITY) {
+            return copy("Infinity");
+        }
+        if (value == Double.NEGATIVE_INFINITY) {
+            return copy("-Infinity");
+        }
+
+        toDecimal(Math.abs(value));
+        int count = extractDigits();
+        // Number of digits before the decimal point; may be zero or negative
+        int point = count + exponent;
+        count = round(count, point);
+        if (count == 0) {
+            buffer[0] = '0';
+            return 1;
+        }
+        if (count < 0) {
+            // Rounding carried into a new leading digit
+            count = 1;
+            point++;
+        }
+
+        int pos = 0;
+        if (value < 0) {
+            buffer[pos++] = '-';
+        }
+        if (point <= 0) {
+            buffer[pos++] = '0';
+            buffer[pos++] = '.';
+            for (int i = point; i < 0; i++) {
+                buffer[pos++] = '0';
+            }
+            for (int i = 0; i < count; i++) {
+                buffer[pos++] = (char) ('0' + digits[i]);
+            }
+        } else if (point >= count) {
+            for (int i = 0; i < count; i++) {
+                buffer[pos++] = (char) ('0' + digits[i]);
+            }
+            for (int i = count; i < point; i++) {
+                buffer[pos++] = '0';
+            }
+        } else {
+            for (int i = 0; i < point; i++) {
+                buffer[pos++] = (char) ('0' + digits[i]);
+            }
+            buffer[pos++] = '.';
+            for (int i = point; i < count; i++) {
+                buffer[pos++] = (char) ('0' + digits[i]);
+            }
+        }
+        return pos;
+    }
+
+    /**
+     * Splits the significand into digits, dropping trailing zeros into the exponent.
+     * @return The number of digits
+     */
+    private int extractDigits() {
+        long f = significand;
+        if (f == 0) {
+            return 0;
+        }
+        while (f % 10 == 0) {
+            f /= 10;
+            exponent++;
+        }
+        int count = 0;
+        for (long t = f; t != 0; t /= 10) {
+            count++;
+        }
+        for (int i = count - 1; i >= 0; i--) {
+            digits[i] = (byte) (f % 10);
+            f /= 10;
+        }
+        return count;
+    }
+
+    /**
+     * Rounds the digits half-up to the significant and fraction digit limits.
+     * @return The remaining digit count without trailing zeros, 0 if the value
+     *         rounded to zero, or -1 if it rounded up to a single digit 1
+     */
+    private int round(int count, int point) {
+        int keep = Math.min(maxSignificantDigits, point + maxFractionDigits);
+        if (keep >= count) {
+            return count;
+        }
+        if (keep < 0) {
+            return 0;
+        }
+        if (digits[keep] < 5) {
+            // Truncate; the kept digits may end in zeros
+            while (keep > 0 && digits[keep - 1] == 0) {
+                keep--;
+            }
+            return keep;
+        }
+        for (int i = keep - 1; i >= 0; i--) {
+            if (digits[i] < 9) {
+                digits[i]++;
+                return i + 1;
+            }
+        }
+        digits[0] = 1;
+        return -1;
+    }
+
+    private int copy(String text) {
+        text.getChars(0, text.length(), buffer, 0);
+        return text.length();
+    }
+
+    /**
+     * Computes the shortest decimal significand and exponent for a finite,
+     * non-negative double.
+     */
+    private void toDecimal(double v) {
+        long bits = Double.doubleToRawLongBits(v);
+        long t = bits & T_MASK;
+        int bq = (int) (bits >>> (P - 1)) & BQ_MASK;
+        if (bq != 0) {
+            // Normal value: v = c 2^q with c = 2^52 + t and q = bq - 1075
+            int mq = -Q_MIN + 1 - bq;
+            long c = C_MIN | t;
+            if (0 < mq && mq < P) {
+                // Fast path for integers below 2^53
+                long f = c >> mq;
+                if (f << mq == c) {
+                    significand = f;
+                    exponent = 0;
+                    return;
+                }
+            }
+            toDecimal(-mq, c, 0);
+        } else if (t != 0) {
+            // Subnormal value; tiny significands are scaled up for precision
+            if (t < C_TINY) {
+                toDecimal(Q_MIN, 10 * t, -1);
+            } else {
+                toDecimal(Q_MIN, t, 0);
+            }
+        } else {
+            significand = 0;
+            exponent = 0;
+        }
+    }
+
+    private void toDecimal(int q, long c, int dk) {
+        int out = (int) c & 0x1;
+        long cb = c << 2;
+        long cbr = cb + 2;
+        long cbl;
+        int k;
+        if (c != C_MIN | q == Q_MIN) {
+            cbl = cb - 2;
+            k = flog10pow2(q);
+        } else {
+            // The gap below a power of two is half the gap above it
+            cbl = cb - 1;
+            k = flog10threeQuartersPow2(q);
+        }
+        int h = q + flog2pow10(-k) + 2;
+
+        long g1 = Powers.G[2 * (k - K_MIN)];
+        long g0 = Powers.G[2 * (k - K_MIN) + 1];
+        long vb = rop(g1, g0, cb << h);
+        long vbl = rop(g1, g0, cbl << h);
+        long vbr = rop(g1, g0, cbr << h);
+
+        long s = vb >> 2;
+        if (s >= 100) {
+            // Try one digit less: s' = floor(s / 10)
+            long sp10 = 10 * multiplyHigh(s, 115_292_150_460_684_698L << 4);
+            long tp10 = sp10 + 10;
+            boolean upin = vbl + out <= sp10 << 2;
+            boolean wpin = (tp10 << 2) + out <= vbr;
+            if (upin != wpin) {
+                significand = upin ? sp10 : tp10;
+                exponent = k;
+                return;
+            }
+        }
+        long t = s + 1;
+        boolean uin = vbl + out <= s << 2;
+        boolean win = (t << 2) + out <= vbr;
+        if (uin != win) {
+            significand = uin ? s : t;
+            exponent = k + dk;
+            return;
+        }
+        // Both candidates round trip: pick the closer one, ties to even
+        long cmp = vb - (s + t << 1);
+        significand = cmp < 0 || cmp == 0 && (s & 0x1) == 0 ? s : t;
+        exponent = k + dk;
+    }
+
+    /**
+     * Rounds g cp / 2^127 to odd, where g = g1 2^63 + g0.
+     */
+    private static long rop(long g1, long g0, long cp) {
+        long x1 = multiplyHigh(g0, cp);
+        long y0 = g1 * cp;
+        long y1 = multiplyHigh(g1, cp);
+        long z = (y0 >>> 1) + x1;
+        long vbp = y1 + (z >>> 63);
+        return vbp | (z & MASK_63) + MASK_63 >>> 63;
+    }
+
+    /**
+     * Returns the high 64 bits of the signed 128-bit product x * y.
+     */
+    static long multiplyHigh(long x, long y) {
+        long x1 = x >> 32;
+        long x2 = x & 0xFFFFFFFFL;
+        long y1 = y >> 32;
+        long y2 = y & 0xFFFFFFFFL;
+        long z2 = x2 * y2;
+        long t = x1 * y2 + (z2 >>> 32);
+        long z1 = t & 0xFFFFFFFFL;
+        long z0 = t >> 32;
+        z1 += x2 * y1;
+        return x1 * y1 + z0 + (z1 >> 32);
+    }
+
+    // floor(e log10(2))
+    private static int flog10pow2(int e) {
+        return (int) (e * 661_971_961_083L >> 41);
+    }
+
+    // floor(e log10(2) + log10(3/4))
+    private static int flog10threeQuartersPow2(int e) {
+        return (int) (e * 661_971_961_083L + -274_743_187_321L >> 41);
+    }
+
+    // floor(e log2(10))
+    private static int flog2pow10(int e) {
+        return (int) (e * 913_124_641_741L >> 38);
+    }
+
+    /**
+     * Table of g = floor(10^-k 2^-r) + 1 for k in [K_MIN, K_MAX], with r chosen
+     * so that 2^125 <= g < 2^126, split into its high and low 63 bits.
+     * Built once on first use rather than shipped as a 10 KB literal.
+     */
+    private static final class Powers {
+
+        static final long[] G = new long[2 * (K_MAX - K_MIN + 1)];
+
+        static {
+            BigInteger mask63 = BigInteger.ONE.shiftLeft(63).subtract(BigInteger.ONE);
+            for (int k = K_MIN; k <= K_MAX; k++) {
+                int e = -k;
+                int r = flog2pow10(e) - 125;
+                BigInteger numerator = e >= 0 ? BigInteger.TEN.pow(e) : BigInteger.ONE;
+                BigInteger denominator = e >= 0 ? BigInteger.ONE : BigInteger.TEN.pow(-e);
+                if (r >= 0) {
+                    denominator = denominator.shiftLeft(r);
+                } else {
+                    numerator = numerator.shiftLeft(-r);
+                }
+                BigInteger g = numerator.divide(denominator).add(BigInteger.ONE);
+                G[2 * (k - K_MIN)] = g.shiftRight(63).longValue();
+                G[2 * (k - K_MIN) + 1] = g.and(mask63).longValue();
+            }
+        }
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.calculator;
+
+/**
+ * EvaluationLimits bounds the work one expression may cause, so text from
+ * untrusted clients cannot keep a thread busy for long. The limits are
+ * checked while the expression is scanned, before it is parsed, optimized or
+ * evaluated, and scanning stops at the first token over budget. Since every
+ * later stage is linear in the number of tokens, an admitted expression
+ * compiles and evaluates in time proportional to the limits.
+ * Each limit is reported as its own EvaluationResult status, and
+ * compile() methods that throw report it as an IllegalArgumentException.
+ * Limits apply through CalculatorLogic.setLimits, or to one Evaluator
+ * through its constructor. Instances are immutable.
+ */
+public final class EvaluationLimits {
+
+    /** No limits beyond what fits in memory; the default of CalculatorLogic. */
+    public static final EvaluationLimits NONE = new EvaluationLimits(
+            Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE, Integer.MAX_VALUE);
+
+    /**
+     * Limits for text from untrusted clients: far above anything typed into
+     * a calculator, and low enough that an expression at every limit still
+     * compiles in a few milliseconds.
+     */
+    public static final EvaluationLimits UNTRUSTED = new EvaluationLimits(100_000, 1_000, 50_000, 25_000);
+
+    private final int maxLength;
+    private final int maxDepth;
+    private final int maxTokens;
+    private final int maxOperations;
+
+    /**
+     * @param maxLength Maximum number of characters, including whitespace
+     * @param maxDepth Maximum number of parentheses open at once
+     * @param maxTokens Maximum number of numbers, names, operators and parentheses
+     * @param maxOperations Maximum number of operators and functions
+     */
+    public EvaluationLimits(int maxLength, int maxDepth, int maxTokens, int maxOperations) {
+        if (maxLength <= 0 || maxDepth <= 0 || maxTokens <= 0 || maxOperations <= 0) {
+            throw new IllegalArgumentException("Evaluation limits must be positive");
+        }
+        this.maxLength = maxLength;
+        this.maxDepth = maxDepth;
+        this.maxTokens = maxTokens;
+        this.maxOperations = maxOperations;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    public int getMaxTokens() {
+        return maxTokens;
+    }
+
+    public int getMaxOperations() {
+        return maxOperations;
+    }
+
+    /**
+     * Records EXPRESSION_TOO_LONG if a text of the given length is over budget.
+     * This is checked before anything reads the text, so that even a blank
+     * check or a cache lookup cannot take time proportional to an oversized input.
+     * @return true if the length is within the limit
+     */
+    boolean admitLength(int length, EvaluationResult result) {
+        return length <= maxLength || result.fail(EvaluationResult.EXPRESSION_TOO_LONG, maxLength);
+    }
+
+    @Override
+    public String toString() {
+        return "EvaluationLimits[length=" + maxLength + ", depth=" + maxDepth
+                + ", tokens=" + maxTokens + ", operations=" + maxOperations + "]";
+    }
+}
@@ -0,0 +1,144 @@
+package com.example.calculator;
+
+/**
+ * EvaluationResult receives the outcome of an evaluation that reports errors
+ * as status codes instead of exceptions: a status, the result value, and the
+ * position in the expression where an error was found.
+ * A holder is meant to be reused across evaluations and is overwritten by
+ * each one. An instance is not thread-safe.
+ */
+public final class EvaluationResult {
+    
+    // Status codes
+    public static final int OK = 0;
+    /** The expression is null or blank; the value is 0 as shown by the display. */
+    public static final int EMPTY = 1;
+    public static final int UNEXPECTED_CHARACTER = 2;
+    public static final int MALFORMED_NUMBER = 3;
+    /** A missing operand or a misplaced operator. */
+    public static final int SYNTAX_ERROR = 4;
+    public static final int UNBALANCED_PARENTHESES = 5;
+    /** A name that is not one of the variables a template was compiled with. */
+    public static final int UNKNOWN_VARIABLE = 6;
+    /** A variable that was given no value. */
+    public static final int UNBOUND_VARIABLE = 7;
+    public static final int DIVISION_BY_ZERO = 8;
+    public static final int NEGATIVE_SQUARE_ROOT = 9;
+    /** The result overflowed or is undefined, such as a fractional power of a negative number. */
+    public static final int NOT_FINITE = 10;
+    // Rejections by EvaluationLimits, reported before the expression is parsed
+    /** The text is longer than the maximum length; the position is that maximum. */
+    public static final int EXPRESSION_TOO_LONG = 11;
+    /** More parentheses are open at once than the maximum depth. */
+    public static final int NESTING_TOO_DEEP = 12;
+    public static final int TOO_MANY_TOKENS = 13;
+    /** More operators and functions than the maximum operation count. */
+    public static final int TOO_MANY_OPERATIONS = 14;
+    
+    private static final String[] DESCRIPTIONS = {
+        "OK",
+        "Empty expression",
+        "Unexpected character",
+        "Malformed number",
+        "Syntax error",
+        "Unbalanced parentheses",
+        "Unknown variable",
+        "Unbound variable",
+        "Division by zero",
+        "Square root of a negative number",
+        "Result is not a finite number",
+        "Expression is too long",
+        "Parentheses are nested too deeply",
+        "Expression has too many tokens",
+        "Expression has too many operations"
+    };
+    
+    private int status;
+    private int position = -1;
+    private double value;
+    
+    /**
+     * Returns the status of the last evaluation, one of the constants above.
+     */
+    public int getStatus() {
+        return status;
+    }
+    
+    public boolean isOk() {
+        return status == OK;
+    }
+    
+    /**
+     * Returns true if the expression itself is malformed, as opposed to
+     * empty or failing while it was evaluated.
+     */
+    public boolean isSyntaxError() {
+        return status >= UNEXPECTED_CHARACTER && status <= UNKNOWN_VARIABLE;
+    }
+    
+    /**
+     * Returns true if the expression was refused for exceeding one of the
+     * EvaluationLimits, without being parsed or evaluated.
+     */
+    public boolean isRejected() {
+        return status >= EXPRESSION_TOO_LONG && status <= TOO_MANY_OPERATIONS;
+    }
+    
+    /**
+     * Returns the result of the last evaluation. This is 0 for EMPTY, the
+     * infinite or NaN result for NOT_FINITE, and Double.NaN for other errors.
+     */
+    public double getValue() {
+        return value;
+    }
+    
+    /**
+     * Returns the character offset, relative to the start of the evaluated
+     * text, of the token where the error was found, or -1 if there is none.
+     */
+    public int getErrorPosition() {
+        return position;
+    }
+    
+    /**
+     * Describes the status for logs and exception messages.
+     * Builds a new string, so it is meant for the error path only.
+     */
+    public String getMessage() {
+        String description = DESCRIPTIONS[status];
+        return position < 0 ? description : description + " at " + position;
+    }
+    
+    @Override
+    public String toString() {
+        return status == OK ? String.valueOf(value) : getMessage();
+    }
+    
+    /**
+     * Clears the status before an evaluation that only reports failures.
+     */
+    void reset() {
+        status = OK;
+        position = -1;
+    }
+    
+    /**
+     * Records the value of a completed evaluation, which succeeded if it is finite.
+     */
+    boolean complete(double result) {
+        status = result - result == 0 ? OK : NOT_FINITE;
+        position = -1;
+        value = result;
+        return status == OK;
+    }
+    
+    /**
+     * Records a failure and returns false, so callers can write "return result.fail(...)".
+     */
+    boolean fail(int errorStatus, int errorPosition) {
+        status = errorStatus;
+        position = errorPosition;
+        value = errorStatus == EMPTY ? 0.0 : Double.NaN;
+        return false;
+    }
+}
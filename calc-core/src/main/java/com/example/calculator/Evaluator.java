@@ -0,0 +1,261 @@
+package com.example.calculator;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Evaluator compiles and evaluates expressions with buffers it keeps between
+ * calls: the token arrays, the parser's operator stack, the syntax trees, the
+ * program being built and the operand stack all grow to the largest
+ * expression seen and are then reused. A program that is only evaluated once
+ * runs straight from the builder's buffers, so evaluating an expression
+ * without variables allocates nothing once the buffers are large enough.
+ * Expressions are checked against the limits the evaluator was created
+ * with, or else against CalculatorLogic.getLimits(); the limits also bound
+ * how large the buffers can grow.
+ *
+ * An instance is not thread-safe. forCurrentThread() returns one evaluator
+ * per thread, which CalculatorLogic itself uses for evaluations without a
+ * plan cache and for the scratch stacks of compiled expressions.
+ */
+public final class Evaluator {
+    
+    private static final ThreadLocal<Evaluator> CURRENT = new ThreadLocal<Evaluator>() {
+        @Override
+        protected Evaluator initialValue() {
+            return new Evaluator();
+        }
+    };
+    
+    // Limits given at construction, or null to follow CalculatorLogic.getLimits()
+    private final EvaluationLimits limits;
+    
+    private final ExpressionScanner tokens = new ExpressionScanner();
+    private final ExpressionParser parser = new ExpressionParser();
+    private final ExpressionTree parsed = new ExpressionTree();
+    private final ExpressionOptimizer optimizer = new ExpressionOptimizer();
+    private final ExpressionTree optimized = new ExpressionTree();
+    private final ProgramBuilder builder = new ProgramBuilder();
+    // Names found while evaluating; an expression evaluated here must have none
+    private final List<String> variables = new ArrayList<>();
+    // Holder for evaluations that only return a double
+    private final EvaluationResult status = new EvaluationResult();
+    // Operand stack and registers, shared by every evaluation on this evaluator
+    private double[] stack = new double[16];
+    
+    /**
+     * Creates an evaluator that checks expressions against CalculatorLogic.getLimits().
+     */
+    public Evaluator() {
+        this.limits = null;
+    }
+    
+    /**
+     * Creates an evaluator that checks expressions against its own limits,
+     * whatever CalculatorLogic.setLimits() is set to.
+     * @param limits The limits to apply, EvaluationLimits.NONE to disable them
+     * @throws IllegalArgumentException if limits is null
+     */
+    public Evaluator(EvaluationLimits limits) {
+        if (limits == null) {
+            throw new IllegalArgumentException("Limits are null");
+        }
+        this.limits = limits;
+    }
+    
+    /**
+     * Returns the calling thread's evaluator, creating it on first use.
+     * It follows CalculatorLogic.getLimits().
+     */
+    public static Evaluator forCurrentThread() {
+        return CURRENT.get();
+    }
+    
+    /**
+     * Evaluates a mathematical expression string and returns the result.
+     * @return The result as a double, 0 for null or blank text, or Double.NaN for errors
+     */
+    public double evaluate(String expression) {
+        if (expression == null) {
+            return 0.0;
+        }
+        return evaluate(expression, 0, expression.length());
+    }
+    
+    /**
+     * Evaluates the expression held in src[start, end), reading the characters in place.
+     * @return The result as a double, 0 for blank text, or Double.NaN for errors
+     * @throws IndexOutOfBoundsException if the range is outside src
+     */
+    public double evaluate(CharSequence src, int start, int end) {
+        evaluate(src, start, end, status);
+        return status.getValue();
+    }
+    
+    /**
+     * Evaluates an expression without throwing, reporting the outcome through the holder.
+     * @param result Receives the value, or the error status and position
+     * @return true if the expression evaluated to a finite number
+     */
+    public boolean evaluate(String expression, EvaluationResult result) {
+        if (expression == null) {
+            return result.fail(EvaluationResult.EMPTY, -1);
+        }
+        return evaluate(expression, 0, expression.length(), result);
+    }
+    
+    /**
+     * Evaluates the expression held in src[start, end) without throwing.
+     * @param result Receives the value, or the error status and a position relative to start
+     * @return true if the expression evaluated to a finite number
+     * @throws IndexOutOfBoundsException if the range is outside src
+     */
+    public boolean evaluate(CharSequence src, int start, int end, EvaluationResult result) {
+        CalculatorLogic.checkRange(src, start, end);
+        if (!limits().admitLength(end - start, result)) {
+            return false;
+        }
+        if (CalculatorLogic.isBlank(src, start, end)) {
+            return result.fail(EvaluationResult.EMPTY, -1);
+        }
+        
+        variables.clear();
+        boolean compiled = compile(src, start, end, variables, false, result);
+        if (compiled && !variables.isEmpty()) {
+            result.fail(EvaluationResult.UNBOUND_VARIABLE, positionOfLoad());
+            compiled = false;
+        }
+        variables.clear();
+        if (!compiled) {
+            return false;
+        }
+        
+        result.reset();
+        double value = builder.execute(CompiledExpression.NO_SLOTS, scratch(builder.frameSize()), result);
+        return result.isOk() && result.complete(value);
+    }
+    
+    /**
+     * Compiles an expression without throwing or consulting the plan cache,
+     * checking it against this evaluator's limits.
+     * Variables get slots in order of first appearance.
+     * @param result Receives the error status and position if compilation fails
+     * @return An immutable, thread-safe compiled expression, or null if the
+     *         expression is empty, malformed or over a limit
+     */
+    public CompiledExpression compile(String expression, EvaluationResult result) {
+        if (expression == null) {
+            result.fail(EvaluationResult.EMPTY, -1);
+            return null;
+        }
+        return compile(expression, 0, expression.length(), result);
+    }
+    
+    /**
+     * Compiles the expression held in src[start, end) like compile(String, EvaluationResult).
+     * @param result Receives the error status and a position relative to start if compilation fails
+     * @return The compiled expression, or null on error
+     * @throws IndexOutOfBoundsException if the range is outside src
+     */
+    public CompiledExpression compile(CharSequence src, int start, int end, EvaluationResult result) {
+        CalculatorLogic.checkRange(src, start, end);
+        List<String> names = new ArrayList<>();
+        ExpressionProgram program = compileProgram(src, start, end, names, false, result);
+        if (program == null) {
+            return null;
+        }
+        return CalculatorLogic.newCompiledExpression(src.subSequence(start, end).toString(), program, names);
+    }
+    
+    /**
+     * Compiles src[start, end) to a program without throwing.
+     * @param variables Known variable names in slot order; extended with new names unless fixed
+     * @param fixed Whether names not already in the list are rejected
+     * @param result Receives the error status and position if compilation fails
+     * @return The program, or null on error
+     */
+    ExpressionProgram compileProgram(CharSequence src, int start, int end, List<String> variables,
+                                     boolean fixed, EvaluationResult result) {
+        return compile(src, start, end, variables, fixed, result) ? program() : null;
+    }
+    
+    /**
+     * Returns this evaluator's scratch stack, grown to at least the given size.
+     */
+    double[] scratch(int size) {
+        if (stack.length < size) {
+            stack = new double[Math.max(size, stack.length * 2)];
+        }
+        return stack;
+    }
+    
+    /**
+     * Runs every compilation stage on the reused buffers, leaving the
+     * program in the builder. Each stage reads the buffers the stage before
+     * it filled, so benchmarks can also run and time them one at a time.
+     * @return true if the expression compiled
+     */
+    private boolean compile(CharSequence src, int start, int end, List<String> variables,
+                            boolean fixed, EvaluationResult result) {
+        if (!scan(src, start, end, result) || !parse(src, variables, fixed, result)) {
+            return false;
+        }
+        optimize();
+        generate(true);
+        return true;
+    }
+    
+    /**
+     * Tokenizes src[start, end) within the limits; display symbols are read directly.
+     */
+    boolean scan(CharSequence src, int start, int end, EvaluationResult result) {
+        return tokens.scan(src, start, end, limits(), result);
+    }
+    
+    /**
+     * Parses the scanned tokens into a syntax tree with the precedence-climbing parser.
+     */
+    boolean parse(CharSequence src, List<String> variables, boolean fixed, EvaluationResult result) {
+        return parser.parse(src, tokens, variables, fixed, parsed, result);
+    }
+    
+    /**
+     * Folds constants, strength-reduces small powers and shares repeated terms.
+     */
+    void optimize() {
+        optimizer.optimize(parsed, optimized);
+    }
+    
+    /**
+     * Generates the postfix opcode program into the builder from the
+     * optimized tree, or from the parsed one if fromOptimized is false.
+     */
+    void generate(boolean fromOptimized) {
+        builder.reset();
+        (fromOptimized ? optimized : parsed).emit(builder);
+    }
+    
+    /**
+     * Copies the generated program out of the builder.
+     */
+    ExpressionProgram program() {
+        return builder.build();
+    }
+    
+    private EvaluationLimits limits() {
+        return limits != null ? limits : CalculatorLogic.getLimits();
+    }
+    
+    /**
+     * Returns the source position of the first variable read, which is the
+     * first LOAD of the program since nodes are emitted in order.
+     */
+    private int positionOfLoad() {
+        for (int node = 0; node < optimized.count(); node++) {
+            if (optimized.op(node) == Opcodes.LOAD) {
+                return optimized.position(node);
+            }
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,334 @@
+package com.example.calculator;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * ExpressionCache is a bounded LRU cache of compiled expressions.
+ * Entries are keyed by the expression text with insignificant whitespace
+ * removed, so "1 + 2" and "1+2" share one compiled plan. Lookups read the
+ * caller's characters in place through a per-thread probe key, so a hit
+ * neither copies the text nor allocates.
+ * The cache is limited both by entry count and by an estimate of the
+ * memory held by the cached plans.
+ * All methods are thread-safe; compilation itself happens outside the lock.
+ */
+public final class ExpressionCache {
+    
+    // Lookup key reused by lookups on the same thread, so a hit allocates nothing
+    private static final ThreadLocal<Key> PROBE = new ThreadLocal<Key>() {
+        @Override
+        protected Key initialValue() {
+            return new Key();
+        }
+    };
+    
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, CompiledExpression> entries;
+    
+    private long bytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    
+    /**
+     * Creates a cache.
+     * @param maxEntries Maximum number of compiled expressions to keep
+     * @param maxBytes Maximum estimated memory of all cached entries, in bytes
+     */
+    public ExpressionCache(int maxEntries, long maxBytes) {
+        if (maxEntries <= 0 || maxBytes <= 0) {
+            throw new IllegalArgumentException("Cache limits must be positive");
+        }
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+        this.entries = new LinkedHashMap<>(16, 0.75f, true);
+    }
+    
+    /**
+     * Returns the cached plan for the expression, compiling and caching it on a miss.
+     * Expressions that fail to compile are not cached.
+     * @throws IllegalArgumentException if the expression is empty or malformed
+     */
+    public CompiledExpression compile(String expression) {
+        if (expression == null) {
+            throw new IllegalArgumentException("Expression is null");
+        }
+        EvaluationResult result = new EvaluationResult();
+        CompiledExpression compiled = compile(expression, result);
+        if (compiled == null) {
+            throw new IllegalArgumentException(result.getMessage());
+        }
+        return compiled;
+    }
+    
+    /**
+     * Returns the cached plan for the expression without throwing, compiling
+     * and caching it on a miss. Expressions that fail to compile are not cached.
+     * @param result Receives the error status and position if compilation fails
+     * @return The compiled expression, or null if the expression is empty or malformed
+     */
+    public CompiledExpression compile(String expression, EvaluationResult result) {
+        if (expression == null) {
+            result.fail(EvaluationResult.EMPTY, -1);
+            return null;
+        }
+        return compile(expression, 0, expression.length(), result);
+    }
+    
+    /**
+     * Returns the cached plan for src[start, end) without throwing. The text
+     * is only copied on a miss, when the new plan is stored.
+     * @param result Receives the error status and a position relative to start if compilation fails
+     * @return The compiled expression, or null if the expression is empty or malformed
+     * @throws IndexOutOfBoundsException if the range is outside src
+     */
+    public CompiledExpression compile(CharSequence src, int start, int end, EvaluationResult result) {
+        CalculatorLogic.checkRange(src, start, end);
+        // Reject oversized text before hashing it
+        if (!CalculatorLogic.getLimits().admitLength(end - start, result)) {
+            return null;
+        }
+        Key key;
+        CompiledExpression compiled;
+        Key probe = PROBE.get().probe(src, start, end);
+        try {
+            synchronized (this) {
+                CompiledExpression cached = entries.get(probe);
+                if (cached != null) {
+                    hits++;
+                    return cached;
+                }
+                misses++;
+            }
+            
+            compiled = CalculatorLogic.compileExpression(src, start, end, result);
+            if (compiled == null) {
+                return null;
+            }
+            key = probe.copy();
+        } finally {
+            // Do not keep the caller's text reachable
+            probe.release();
+        }
+        long size = estimateSize(key, compiled);
+        
+        synchronized (this) {
+            CompiledExpression existing = entries.get(key);
+            if (existing != null) {
+                // Another thread compiled the same text in the meantime
+                return existing;
+            }
+            if (size <= maxBytes) {
+                entries.put(key, compiled);
+                bytes += size;
+                evictOverflow();
+            }
+        }
+        return compiled;
+    }
+    
+    /**
+     * Removes every entry. Counters are kept.
+     */
+    public synchronized void clear() {
+        entries.clear();
+        bytes = 0;
+    }
+    
+    public synchronized int size() {
+        return entries.size();
+    }
+    
+    public synchronized long estimatedBytes() {
+        return bytes;
+    }
+    
+    public synchronized long hitCount() {
+        return hits;
+    }
+    
+    public synchronized long missCount() {
+        return misses;
+    }
+    
+    public synchronized long evictionCount() {
+        return evictions;
+    }
+    
+    /**
+     * Evicts least recently used entries until both limits hold again.
+     */
+    private void evictOverflow() {
+        Iterator<Map.Entry<Key, CompiledExpression>> it = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || bytes > maxBytes) && it.hasNext()) {
+            Map.Entry<Key, CompiledExpression> eldest = it.next();
+            bytes -= estimateSize(eldest.getKey(), eldest.getValue());
+            it.remove();
+            evictions++;
+        }
+    }
+    
+    private static long estimateSize(Key key, CompiledExpression compiled) {
+        // Key text, the retained source text and map entry overhead
+        long size = 2L * key.end + 2L * compiled.getExpression().length() + 112
+                + compiled.program().estimatedBytes();
+        if (compiled.closure() != null) {
+            // At most one node of about 32 bytes per instruction
+            size += 32L * compiled.program().codeLength();
+        }
+        return size;
+    }
+    
+    /**
+     * Maps a position in one spelling of an expression to the same token in
+     * src[start, end), another spelling that differs only in whitespace.
+     * @return The position relative to start
+     */
+    static int translatePosition(String from, int position, CharSequence src, int start, int end) {
+        int tokenChars = 0;
+        for (int i = 0; i < position; i++) {
+            if (!isSpace(from.charAt(i))) {
+                tokenChars++;
+            }
+        }
+        int i = start;
+        while (i < end && (tokenChars > 0 || isSpace(src.charAt(i)))) {
+            if (!isSpace(src.charAt(i))) {
+                tokenChars--;
+            }
+            i++;
+        }
+        return i - start;
+    }
+    
+    /**
+     * Whitespace as read by ExpressionScanner.
+     */
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\r' || c == '\f' || c == 0x0B;
+    }
+    
+    /**
+     * Characters of numbers and names, which whitespace keeps apart.
+     */
+    private static boolean isWord(char c) {
+        return c >= '0' && c <= '9' || c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c == '_' || c == '.';
+    }
+    
+    /**
+     * Returns the index of the next character of the normalized text at or
+     * after i, or end. A whitespace run only matters between two characters
+     * of numbers or names ("1 2" is not "12"); it is then read as one space,
+     * represented by its first character. All other whitespace is skipped.
+     */
+    private static int nextSignificant(CharSequence src, int start, int i, int end) {
+        while (i < end) {
+            char c = src.charAt(i);
+            if (!isSpace(c)) {
+                return i;
+            }
+            if (i > start && isWord(src.charAt(i - 1))) {
+                int next = i + 1;
+                while (next < end && isSpace(src.charAt(next))) {
+                    next++;
+                }
+                if (next < end && isWord(src.charAt(next))) {
+                    return i;
+                }
+                i = next;
+            } else {
+                i++;
+            }
+        }
+        return end;
+    }
+    
+    private static char normalized(char c) {
+        return isSpace(c) ? ' ' : c;
+    }
+    
+    /**
+     * Cache key: a range of text compared by its normalized characters.
+     * Lookups probe with the caller's range; stored keys own a normalized copy.
+     */
+    private static final class Key {
+        
+        // Only a thread's probe changes these, and only between lookups
+        private CharSequence text;
+        private int start;
+        private int end;
+        private int hash;
+        
+        /**
+         * Creates a probe, which points at the caller's text during a lookup.
+         */
+        Key() {
+        }
+        
+        /**
+         * Points this probe at text[start, end) and returns it.
+         */
+        Key probe(CharSequence text, int start, int end) {
+            this.text = text;
+            this.start = start;
+            this.end = end;
+            int h = 0;
+            for (int i = nextSignificant(text, start, start, end); i < end; i = nextSignificant(text, start, i + 1, end)) {
+                h = 31 * h + normalized(text.charAt(i));
+            }
+            this.hash = h;
+            return this;
+        }
+        
+        void release() {
+            text = null;
+        }
+        
+        private Key(String normalizedText, int hash) {
+            this.text = normalizedText;
+            this.start = 0;
+            this.end = normalizedText.length();
+            this.hash = hash;
+        }
+        
+        /**
+         * Returns a key that owns a normalized copy of this key's text.
+         */
+        Key copy() {
+            StringBuilder normalizedText = new StringBuilder(end - start);
+            for (int i = nextSignificant(text, start, start, end); i < end; i = nextSignificant(text, start, i + 1, end)) {
+                normalizedText.append(normalized(text.charAt(i)));
+            }
+            return new Key(normalizedText.toString(), hash);
+        }
+        
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+        
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key) || ((Key) o).hash != hash) {
+                return false;
+            }
+            Key other = (Key) o;
+            int i = nextSignificant(text, start, start, end);
+            int j = nextSignificant(other.text, other.start, other.start, other.end);
+            while (i < end && j < other.end) {
+                if (normalized(text.charAt(i)) != normalized(other.text.charAt(j))) {
+                    return false;
+                }
+                i = nextSignificant(text, start, i + 1, end);
+                j = nextSignificant(other.text, other.start, j + 1, other.end);
+            }
+            return i == end && j == other.end;
+        }
+    }
+}
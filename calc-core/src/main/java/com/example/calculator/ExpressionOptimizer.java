@@ -0,0 +1,266 @@
+package com.example.calculator;
+
+import java.util.Arrays;
+
+/**
+ * ExpressionOptimizer rewrites a syntax tree into a cheaper one that
+ * evaluates to the same results and fails with the same errors:
+ *
+ *   constant folding    subtrees of constants become one constant, computed
+ *                       with the same operations the interpreter uses
+ *   x^2, x^3            become x*x and x*x*x instead of Math.pow
+ *   x÷2^k               becomes x*2^-k, which is exact for powers of two
+ *   x*1, 1*x, x÷1, x^1  become x
+ *   −(−x)               becomes x
+ *   repeated terms      are computed once and reused from a register
+ *
+ * A division by a zero constant or the square root of a negative constant
+ * is never folded, so it still fails at run time with its source position.
+ * Rewrites never drop an operand either: x^0 is left alone, since x may
+ * fail or read a variable that is not bound.
+ * Math.pow(x, 2) is exactly x*x; a cube can differ from Math.pow in the
+ * last bit, which is within the accuracy Math.pow itself promises.
+ *
+ * Rules are applied in one pass over the nodes in postorder, so every node
+ * sees its already optimized children. Nodes are hash-consed as they are
+ * created: a node equal to an earlier one, with the same operation and the
+ * same children, is not added again, so the rewritten tree is a DAG in which
+ * every distinct subexpression appears once. Commutative operands are not
+ * reordered, since that could change which of two errors is reported.
+ * The first occurrence of a shared subexpression is the one evaluated, so
+ * an error in it is still reported at its first position in the text.
+ * An optimizer can be reused but is not thread-safe.
+ */
+final class ExpressionOptimizer {
+
+    // Rewritten DAG, including nodes that later rewrites made unreachable
+    private final ExpressionTree work = new ExpressionTree();
+    // Node in work for each node of the input tree
+    private int[] mapped = new int[16];
+    // Open-addressing hash set of the nodes in work. An entry is only in use
+    // if its stamp is the current run's, so the table is never cleared and a
+    // table grown by one large tree costs nothing on the small ones after it
+    private int[] table = new int[64];
+    private int[] stamps = new int[64];
+    private int stamp;
+
+    /**
+     * Optimizes a tree into another one, replacing its contents.
+     */
+    void optimize(ExpressionTree tree, ExpressionTree into) {
+        work.reset();
+        if (mapped.length < tree.count()) {
+            mapped = new int[tree.count()];
+        }
+        if (++stamp == 0) {
+            // The stamps wrapped around, so older entries could look current
+            Arrays.fill(stamps, 0);
+            stamp = 1;
+        }
+
+        for (int node = 0; node < tree.count(); node++) {
+            int op = tree.op(node);
+            int position = tree.position(node);
+            switch (op) {
+                case Opcodes.CONST:
+                    mapped[node] = constant(tree.value(node), position);
+                    break;
+                case Opcodes.LOAD:
+                    mapped[node] = intern(Opcodes.LOAD, ExpressionTree.NONE, ExpressionTree.NONE, tree.slot(node), 0, position);
+                    break;
+                default:
+                    if (Opcodes.isUnary(op)) {
+                        mapped[node] = unary(op, mapped[tree.left(node)], position);
+                    } else {
+                        mapped[node] = binary(op, mapped[tree.left(node)], mapped[tree.right(node)], position);
+                    }
+                    break;
+            }
+        }
+
+        work.linearize(mapped[tree.root()], into);
+    }
+
+    private int unary(int op, int operand, int position) {
+        if (isConstant(operand)) {
+            double x = work.value(operand);
+            // sqrt(-x) is left to fail at run time
+            if (op != Opcodes.SQRT || !(x < 0)) {
+                return constant(unaryValue(op, x), position);
+            }
+        }
+        if (op == Opcodes.NEG && work.op(operand) == Opcodes.NEG) {
+            return work.left(operand);
+        }
+        return intern(op, operand, ExpressionTree.NONE, 0, 0, position);
+    }
+
+    private int binary(int op, int left, int right, int position) {
+        if (isConstant(left) && isConstant(right)) {
+            double y = work.value(right);
+            // x÷0 is left to fail at run time, and x^2 and x^3 fold below
+            // as the SQUARE and CUBE they run as, so they round the same way
+            if ((op != Opcodes.DIV || y != 0) && (op != Opcodes.POW || y != 2 && y != 3)) {
+                return constant(binaryValue(op, work.value(left), y), position);
+            }
+        }
+
+        if (isConstant(right)) {
+            double y = work.value(right);
+            switch (op) {
+                case Opcodes.MUL:
+                    if (y == 1) {
+                        return left;
+                    }
+                    break;
+                case Opcodes.DIV:
+                    if (y == 1) {
+                        return left;
+                    }
+                    if (hasExactReciprocal(y)) {
+                        int reciprocal = constant(1 / y, work.position(right));
+                        return intern(Opcodes.MUL, left, reciprocal, 0, 0, position);
+                    }
+                    break;
+                case Opcodes.POW:
+                    if (y == 1) {
+                        return left;
+                    }
+                    if (y == 2) {
+                        return unary(Opcodes.SQUARE, left, position);
+                    }
+                    if (y == 3) {
+                        return unary(Opcodes.CUBE, left, position);
+                    }
+                    break;
+                default:
+                    break;
+            }
+        }
+        if (op == Opcodes.MUL && isConstant(left) && work.value(left) == 1) {
+            return right;
+        }
+
+        return intern(op, left, right, 0, 0, position);
+    }
+
+    /**
+     * Computes a unary operation exactly as ExpressionProgram does.
+     */
+    static double unaryValue(int op, double x) {
+        switch (op) {
+            case Opcodes.NEG:
+                return -x;
+            case Opcodes.SQRT:
+                return Math.sqrt(x);
+            case Opcodes.SQUARE:
+                return x * x;
+            case Opcodes.CUBE:
+                return x * x * x;
+            default:
+                throw new IllegalStateException("Not a unary operator: " + op);
+        }
+    }
+
+    /**
+     * Computes a binary operation exactly as ExpressionProgram does.
+     */
+    static double binaryValue(int op, double x, double y) {
+        switch (op) {
+            case Opcodes.ADD:
+                return x + y;
+            case Opcodes.SUB:
+                return x - y;
+            case Opcodes.MUL:
+                return x * y;
+            case Opcodes.DIV:
+                return x / y;
+            case Opcodes.POW:
+                return Math.pow(x, y);
+            default:
+                throw new IllegalStateException("Not a binary operator: " + op);
+        }
+    }
+
+    /**
+     * Returns true if y is a power of two whose reciprocal is a normal double,
+     * so that x÷y and x*(1÷y) round the same exact value.
+     */
+    private static boolean hasExactReciprocal(double y) {
+        return isNormalPowerOfTwo(y) && isNormalPowerOfTwo(1 / y);
+    }
+
+    private static boolean isNormalPowerOfTwo(double y) {
+        long bits = Double.doubleToRawLongBits(y);
+        int exponent = (int) (bits >>> 52) & 0x7FF;
+        return (bits & 0x000FFFFFFFFFFFFFL) == 0 && exponent != 0 && exponent != 0x7FF;
+    }
+
+    private boolean isConstant(int node) {
+        return work.op(node) == Opcodes.CONST;
+    }
+
+    private int constant(double value, int position) {
+        return intern(Opcodes.CONST, ExpressionTree.NONE, ExpressionTree.NONE, 0, value, position);
+    }
+
+    /**
+     * Returns the node of work equal to the given one, appending it first if
+     * there is none. Constants are equal when their bits are, so 0 and −0
+     * stay apart.
+     */
+    private int intern(int op, int left, int right, int slot, double value, int position) {
+        long bits = Double.doubleToLongBits(value);
+        int mask = table.length - 1;
+
+        int i = hash(op, left, right, slot, bits) & mask;
+        while (stamps[i] == stamp) {
+            int node = table[i];
+            if (work.op(node) == op && work.left(node) == left && work.right(node) == right
+                    && (op != Opcodes.LOAD || work.slot(node) == slot)
+                    && (op != Opcodes.CONST || Double.doubleToLongBits(work.value(node)) == bits)) {
+                return node;
+            }
+            i = (i + 1) & mask;
+        }
+
+        int node;
+        if (op == Opcodes.CONST) {
+            node = work.constant(value, position);
+        } else if (op == Opcodes.LOAD) {
+            node = work.load(slot, position);
+        } else if (right == ExpressionTree.NONE) {
+            node = work.unary(op, left, position);
+        } else {
+            node = work.binary(op, left, right, position);
+        }
+        table[i] = node;
+        stamps[i] = stamp;
+        if (2 * work.count() > table.length) {
+            rehash(2 * table.length);
+        }
+        return node;
+    }
+
+    private void rehash(int capacity) {
+        table = new int[capacity];
+        stamps = new int[capacity];
+        for (int node = 0; node < work.count(); node++) {
+            int op = work.op(node);
+            int slot = op == Opcodes.LOAD ? work.slot(node) : 0;
+            long bits = Double.doubleToLongBits(op == Opcodes.CONST ? work.value(node) : 0);
+            int i = hash(op, work.left(node), work.right(node), slot, bits) & (capacity - 1);
+            while (stamps[i] == stamp) {
+                i = (i + 1) & (capacity - 1);
+            }
+            table[i] = node;
+            stamps[i] = stamp;
+        }
+    }
+
+    private static int hash(int op, int left, int right, int slot, long bits) {
+        int hash = ((op * 31 + left) * 31 + right) * 31 + slot;
+        hash = hash * 31 + (int) (bits ^ (bits >>> 32));
+        return hash ^ (hash >>> 16);
+    }
+}
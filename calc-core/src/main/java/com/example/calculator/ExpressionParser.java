@@ -0,0 +1,376 @@
+package com.example.calculator;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * ExpressionParser builds an ExpressionTree from scanned tokens by
+ * precedence climbing (a Pratt parser). Every operator has a binding power;
+ * an operand is claimed by the operator on its side that binds tighter.
+ * Left-associative operators parse their right operand at their own
+ * binding power and right-associative ones just below it, so
+ * 1−2−3 is (1−2)−3 while 2^3^2 is 2^(3^2).
+ *
+ * Binding powers, loosest first:
+ *   + −          additive, left-associative
+ *   × ÷ %        multiplicative, left-associative; x% is x÷100
+ *   unary −      binds tighter than × so −2×3 is (−2)×3, looser than ^ so −2^2 is −(2^2)
+ *   ^ ²          power, right-associative; x² is x^2
+ *   √            function call on the tightest following operand, so √4² is (√4)²
+ *
+ * The grammar is validated while parsing, and the first misplaced token is
+ * reported through the EvaluationResult. Operators waiting for an operand
+ * are kept on explicit stacks rather than the call stack, so parsing takes
+ * linear time and any nesting depth fits in memory proportional to it.
+ * A parser can be reused but is not thread-safe.
+ */
+final class ExpressionParser {
+
+    private static final int BP_NONE = 0;
+    private static final int BP_ADDITIVE = 10;
+    private static final int BP_MULTIPLICATIVE = 20;
+    private static final int BP_NEGATE = 25;
+    private static final int BP_POWER = 30;
+    private static final int BP_FUNCTION = 40;
+
+    // Variable lists up to this size are searched without the hash index
+    private static final int LINEAR_NAMES = 8;
+
+    // Kinds of suspended frames: a binary operator waiting for its right
+    // operand, a prefix operator or function waiting for its operand, and "("
+    // waiting for its contents and ")"
+    private static final int FRAME_BINARY = 0;
+    private static final int FRAME_PREFIX = 1;
+    private static final int FRAME_GROUP = 2;
+
+    private CharSequence src;
+    private ExpressionScanner tokens;
+    private List<String> variables;
+    private boolean fixed;
+    private ExpressionTree tree;
+    private EvaluationResult result;
+    // Index of the next unread token
+    private int next;
+
+    // Open-addressing index of variable names, storing slot + 1; 0 is empty
+    private int[] names = new int[0];
+    // Number of leading slots already in the index
+    private int indexed;
+
+    // Suspended frames, innermost last; they grow with the nesting depth
+    private int[] frameKinds = new int[16];
+    private int[] frameOps = new int[16];
+    // Left operand of a binary operator
+    private int[] frameLefts = new int[16];
+    private int[] framePositions = new int[16];
+    // Binding power the frame's operand is parsed at
+    private int[] frameBindingPowers = new int[16];
+    private int depth;
+
+    /**
+     * Parses the scanned tokens of src into the tree, replacing its contents.
+     * @param variables Known variable names in slot order; extended with new names unless fixed
+     * @param fixed Whether names not already in the list are rejected
+     * @param result Receives the error status and position if the expression is malformed
+     * @return true if the tokens form exactly one expression
+     */
+    boolean parse(CharSequence src, ExpressionScanner tokens, List<String> variables, boolean fixed,
+                  ExpressionTree tree, EvaluationResult result) {
+        this.src = src;
+        this.tokens = tokens;
+        this.variables = variables;
+        this.fixed = fixed;
+        this.tree = tree;
+        this.result = result;
+        next = 0;
+        indexed = 0;
+        tree.reset();
+
+        try {
+            if (parseExpression() == ExpressionTree.NONE) {
+                return false;
+            }
+            if (next < tokens.count()) {
+                // Everything before this token was a complete expression
+                int status = tokens.kind(next) == ExpressionScanner.RIGHT_PAREN
+                        ? EvaluationResult.UNBALANCED_PARENTHESES : EvaluationResult.SYNTAX_ERROR;
+                return result.fail(status, tokens.position(next));
+            }
+            return true;
+        } finally {
+            // Do not keep the caller's text and lists reachable
+            this.src = null;
+            this.tokens = null;
+            this.variables = null;
+            this.tree = null;
+            this.result = null;
+        }
+    }
+
+    /**
+     * Parses a whole expression: an operand, then every operator that binds
+     * tighter than the expression being parsed. Instead of recursing into the
+     * right operand of a binary operator, the operand of a prefix operator or
+     * the inside of parentheses, the operator is suspended in a frame and
+     * completed once its operand ends.
+     * @return The node of the parsed expression, or NONE on error
+     */
+    private int parseExpression() {
+        depth = 0;
+
+        while (true) {
+            int left = parseOperand();
+            if (left == ExpressionTree.NONE) {
+                return ExpressionTree.NONE;
+            }
+
+            while (true) {
+                int minBindingPower = operandBindingPower();
+                int bindingPower = next < tokens.count() ? bindingPower(tokens.kind(next)) : BP_NONE;
+                if (bindingPower > minBindingPower) {
+                    int kind = tokens.kind(next);
+                    int position = tokens.position(next);
+                    next++;
+                    if (kind == ExpressionScanner.SQUARE) {
+                        left = tree.binary(Opcodes.POW, left, tree.constant(2, position), position);
+                    } else if (kind == ExpressionScanner.PERCENT) {
+                        left = tree.binary(Opcodes.DIV, left, tree.constant(100, position), position);
+                    } else {
+                        push(FRAME_BINARY, binaryOp(kind), left, position,
+                             kind == ExpressionScanner.POWER ? bindingPower - 1 : bindingPower);
+                        break;
+                    }
+                    continue;
+                }
+
+                // A looser operator, ")" or a token the caller has to reject ends this operand
+                if (depth == 0) {
+                    return left;
+                }
+                depth--;
+                int position = framePositions[depth];
+                switch (frameKinds[depth]) {
+                    case FRAME_BINARY:
+                        left = tree.binary(frameOps[depth], frameLefts[depth], left, position);
+                        break;
+                    case FRAME_PREFIX:
+                        left = tree.unary(frameOps[depth], left, position);
+                        break;
+                    default:
+                        if (next == tokens.count()) {
+                            result.fail(EvaluationResult.UNBALANCED_PARENTHESES, position);
+                            return ExpressionTree.NONE;
+                        }
+                        if (tokens.kind(next) != ExpressionScanner.RIGHT_PAREN) {
+                            result.fail(EvaluationResult.SYNTAX_ERROR, tokens.position(next));
+                            return ExpressionTree.NONE;
+                        }
+                        next++;
+                        break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Parses a number or a variable, suspending the prefix operators and "("
+     * in front of it in frames.
+     * @return The node of the operand, or NONE on error
+     */
+    private int parseOperand() {
+        while (true) {
+            if (next == tokens.count()) {
+                // An operator or "(" with nothing after it, or no tokens at all
+                result.fail(EvaluationResult.SYNTAX_ERROR, tokens.length());
+                return ExpressionTree.NONE;
+            }
+            int token = next++;
+            int position = tokens.position(token);
+
+            switch (tokens.kind(token)) {
+                case ExpressionScanner.NUMBER:
+                    return tree.constant(DecimalParser.parse(src, tokens.start(token), tokens.end(token)), position);
+                case ExpressionScanner.VARIABLE: {
+                    int slot = resolveVariable(tokens.start(token), tokens.end(token));
+                    if (slot < 0) {
+                        result.fail(EvaluationResult.UNKNOWN_VARIABLE, position);
+                        return ExpressionTree.NONE;
+                    }
+                    return tree.load(slot, position);
+                }
+                case ExpressionScanner.NEGATE:
+                    push(FRAME_PREFIX, Opcodes.NEG, ExpressionTree.NONE, position, BP_NEGATE);
+                    break;
+                case ExpressionScanner.FUNCTION:
+                    push(FRAME_PREFIX, functionOp(tokens.function(token)), ExpressionTree.NONE, position,
+                         BP_FUNCTION);
+                    break;
+                case ExpressionScanner.LEFT_PAREN:
+                    push(FRAME_GROUP, 0, ExpressionTree.NONE, position, BP_NONE);
+                    break;
+                default:
+                    // A binary or postfix operator, or ")", with no operand before it
+                    result.fail(EvaluationResult.SYNTAX_ERROR, position);
+                    return ExpressionTree.NONE;
+            }
+        }
+    }
+
+    /**
+     * Returns the binding power the current operand is parsed at: that of
+     * the innermost suspended frame, or BP_NONE at the top level.
+     */
+    private int operandBindingPower() {
+        return depth == 0 ? BP_NONE : frameBindingPowers[depth - 1];
+    }
+
+    /**
+     * Suspends an operator until its operand, parsed at the given binding power, is complete.
+     */
+    private void push(int kind, int op, int left, int position, int bindingPower) {
+        if (depth == frameKinds.length) {
+            int capacity = depth * 2;
+            frameKinds = Arrays.copyOf(frameKinds, capacity);
+            frameOps = Arrays.copyOf(frameOps, capacity);
+            frameLefts = Arrays.copyOf(frameLefts, capacity);
+            framePositions = Arrays.copyOf(framePositions, capacity);
+            frameBindingPowers = Arrays.copyOf(frameBindingPowers, capacity);
+        }
+        frameKinds[depth] = kind;
+        frameOps[depth] = op;
+        frameLefts[depth] = left;
+        framePositions[depth] = position;
+        frameBindingPowers[depth] = bindingPower;
+        depth++;
+    }
+
+    /**
+     * Returns the binding power of a token that follows an operand, or
+     * BP_NONE for tokens that cannot continue an expression.
+     */
+    private static int bindingPower(int tokenKind) {
+        switch (tokenKind) {
+            case ExpressionScanner.PLUS:
+            case ExpressionScanner.MINUS:
+                return BP_ADDITIVE;
+            case ExpressionScanner.TIMES:
+            case ExpressionScanner.DIVIDE:
+            case ExpressionScanner.PERCENT:
+                return BP_MULTIPLICATIVE;
+            case ExpressionScanner.POWER:
+            case ExpressionScanner.SQUARE:
+                return BP_POWER;
+            default:
+                return BP_NONE;
+        }
+    }
+
+    private static int binaryOp(int tokenKind) {
+        switch (tokenKind) {
+            case ExpressionScanner.PLUS:
+                return Opcodes.ADD;
+            case ExpressionScanner.MINUS:
+                return Opcodes.SUB;
+            case ExpressionScanner.TIMES:
+                return Opcodes.MUL;
+            case ExpressionScanner.DIVIDE:
+                return Opcodes.DIV;
+            case ExpressionScanner.POWER:
+                return Opcodes.POW;
+            default:
+                throw new IllegalStateException("Not a binary operator: " + tokenKind);
+        }
+    }
+
+    private static int functionOp(int function) {
+        switch (function) {
+            case ExpressionScanner.FN_SQRT:
+                return Opcodes.SQRT;
+            default:
+                throw new IllegalStateException("Unknown function: " + function);
+        }
+    }
+
+    /**
+     * Returns the slot of the variable named by src[start, end), assigning the
+     * next free slot to new names. Only a new name is copied into a String.
+     * Short lists are searched directly; longer ones through a hash index of
+     * the names, so expressions with many distinct variables stay linear.
+     * @return The slot, or -1 if the name is unknown and the list is fixed
+     */
+    private int resolveVariable(int start, int end) {
+        int slot = variables.size() <= LINEAR_NAMES ? findVariable(start, end) : lookupVariable(start, end);
+        if (slot >= 0 || fixed) {
+            return slot;
+        }
+        variables.add(src.subSequence(start, end).toString());
+        return variables.size() - 1;
+    }
+
+    private int findVariable(int start, int end) {
+        for (int slot = 0; slot < variables.size(); slot++) {
+            if (regionEquals(variables.get(slot), start, end)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private int lookupVariable(int start, int end) {
+        // Index the names added since the last lookup
+        if (indexed == 0 || 2 * variables.size() > names.length) {
+            names = new int[Integer.highestOneBit(Math.max(4 * variables.size(), 64))];
+            indexed = 0;
+        }
+        while (indexed < variables.size()) {
+            index(indexed++);
+        }
+
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + src.charAt(i);
+        }
+        int mask = names.length - 1;
+        for (int i = mix(hash) & mask; names[i] != 0; i = (i + 1) & mask) {
+            if (regionEquals(variables.get(names[i] - 1), start, end)) {
+                return names[i] - 1;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Adds a slot to the name index unless an earlier slot has the same name.
+     */
+    private void index(int slot) {
+        String name = variables.get(slot);
+        int mask = names.length - 1;
+        int i = mix(name.hashCode()) & mask;
+        while (names[i] != 0) {
+            if (variables.get(names[i] - 1).equals(name)) {
+                return;
+            }
+            i = (i + 1) & mask;
+        }
+        names[i] = slot + 1;
+    }
+
+    /**
+     * Spreads String.hashCode bits so that similar names land in different buckets.
+     */
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private boolean regionEquals(String name, int start, int end) {
+        if (name.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < name.length(); i++) {
+            if (name.charAt(i) != src.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
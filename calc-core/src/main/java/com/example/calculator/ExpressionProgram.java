@@ -0,0 +1,345 @@
+package com.example.calculator;
+
+import java.util.Arrays;
+
+/**
+ * ExpressionProgram is the compiled form of an expression: an opcode stream
+ * with a constant pool, run by a loop over a primitive operand stack.
+ * Programs are only created by ProgramBuilder, which guarantees the stack
+ * never underflows, so the interpreter needs no bounds checks of its own.
+ * A parallel position table maps each instruction back to its source token;
+ * it is only read when an evaluation fails.
+ * Subexpressions that occur more than once are computed once and kept in
+ * registers, which live in the scratch stack right above the operand stack.
+ */
+final class ExpressionProgram {
+    
+    private final int[] code;
+    private final int[] positions;
+    private final double[] constants;
+    private final int maxStack;
+    private final int registers;
+    
+    ExpressionProgram(int[] code, int[] positions, double[] constants, int maxStack, int registers) {
+        this.code = code;
+        this.positions = positions;
+        this.constants = constants;
+        this.maxStack = maxStack;
+        this.registers = registers;
+    }
+    
+    /**
+     * Runs the program using the supplied variable values and operand stack.
+     * @param slots Variable values, indexed by slot
+     * @param stack Scratch stack with at least frameSize() entries
+     * @return The result, or Double.NaN for division by zero or the square root of a negative number
+     */
+    double execute(double[] slots, double[] stack) {
+        return execute(slots, stack, null);
+    }
+    
+    /**
+     * Runs the program, recording why it failed in the given holder.
+     * The holder is only touched when an error occurs, so a successful
+     * run costs the same as execute(slots, stack).
+     * @param result Receives the status and source position of an error, or null
+     * @return The result, or Double.NaN for division by zero or the square root of a negative number
+     */
+    double execute(double[] slots, double[] stack, EvaluationResult result) {
+        return execute(code, positions, constants, 0, code.length, slots, stack, stack, maxStack, result);
+    }
+    
+    /**
+     * Runs the instructions in [from, to), which must compute one complete
+     * subexpression, keeping registers in a separate array. Lets parts of a
+     * program run on different threads while sharing their registers.
+     * @param stack Scratch stack with at least maxStack() entries
+     * @param registers Register values, indexed by register
+     * @param result Receives the status and source position of an error, or null
+     * @return The value of the subexpression, or Double.NaN for errors
+     */
+    double executeRange(int from, int to, double[] slots, double[] stack, double[] registers,
+                        EvaluationResult result) {
+        // Split chains have many single-operand terms, which need no loop
+        if (to - from == 2) {
+            switch (code[from]) {
+                case Opcodes.CONST:
+                    return constants[code[from + 1]];
+                case Opcodes.LOAD:
+                    return slots[code[from + 1]];
+                case Opcodes.RECALL:
+                    return registers[code[from + 1]];
+                default:
+                    break;
+            }
+        }
+        return execute(code, positions, constants, from, to, slots, stack, registers, 0, result);
+    }
+    
+    /**
+     * The interpreter loop, over code that need not be held by a program, so
+     * ProgramBuilder can run the code it has emitted without copying it.
+     */
+    static double execute(int[] code, int[] positions, double[] constants, int from, int to,
+                          double[] slots, double[] stack, double[] registers, int registerBase,
+                          EvaluationResult result) {
+        int sp = 0;
+        int pc = from;
+        
+        while (pc < to) {
+            switch (code[pc]) {
+                case Opcodes.CONST:
+                    stack[sp++] = constants[code[pc + 1]];
+                    pc += 2;
+                    continue;
+                case Opcodes.LOAD:
+                    stack[sp++] = slots[code[pc + 1]];
+                    pc += 2;
+                    continue;
+                case Opcodes.STORE:
+                    registers[registerBase + code[pc + 1]] = stack[sp - 1];
+                    pc += 2;
+                    continue;
+                case Opcodes.RECALL:
+                    stack[sp++] = registers[registerBase + code[pc + 1]];
+                    pc += 2;
+                    continue;
+                case Opcodes.ADD:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] + stack[sp];
+                    break;
+                case Opcodes.SUB:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] - stack[sp];
+                    break;
+                case Opcodes.MUL:
+                    sp--;
+                    stack[sp - 1] = stack[sp - 1] * stack[sp];
+                    break;
+                case Opcodes.DIV:
+                    sp--;
+                    if (stack[sp] == 0) {
+                        return fail(result, EvaluationResult.DIVISION_BY_ZERO, positions[pc]);
+                    }
+                    stack[sp - 1] = stack[sp - 1] / stack[sp];
+                    break;
+                case Opcodes.POW:
+                    sp--;
+                    stack[sp - 1] = Math.pow(stack[sp - 1], stack[sp]);
+                    break;
+                case Opcodes.NEG:
+                    stack[sp - 1] = -stack[sp - 1];
+                    break;
+                case Opcodes.SQRT:
+                    if (stack[sp - 1] < 0) {
+                        return fail(result, EvaluationResult.NEGATIVE_SQUARE_ROOT, positions[pc]);
+                    }
+                    stack[sp - 1] = Math.sqrt(stack[sp - 1]);
+                    break;
+                case Opcodes.SQUARE:
+                    stack[sp - 1] = stack[sp - 1] * stack[sp - 1];
+                    break;
+                case Opcodes.CUBE:
+                    stack[sp - 1] = stack[sp - 1] * stack[sp - 1] * stack[sp - 1];
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode: " + code[pc]);
+            }
+            pc++;
+        }
+        
+        return stack[0];
+    }
+    
+    private static double fail(EvaluationResult result, int status, int position) {
+        if (result != null) {
+            result.fail(status, position);
+        }
+        return Double.NaN;
+    }
+    
+    /**
+     * Returns the source position of the first LOAD of a slot at or above
+     * the given one, or -1 if the program reads no such slot.
+     */
+    int positionOfLoad(int minSlot) {
+        int pc = 0;
+        while (pc < code.length) {
+            int opcode = code[pc];
+            if (opcode == Opcodes.LOAD && code[pc + 1] >= minSlot) {
+                return positions[pc];
+            }
+            pc += Opcodes.hasOperand(opcode) ? 2 : 1;
+        }
+        return -1;
+    }
+    
+    /**
+     * Runs the program over a block of rows, one opcode at a time across all rows.
+     * Each stack entry is a column of block values, so dispatch happens once per
+     * opcode per block instead of once per opcode per row.
+     * @param columns Variable columns, indexed by slot
+     * @param offset First row of the block
+     * @param length Number of rows in the block, at most the width of the stack columns
+     * @param stack Scratch stack with at least frameSize() columns
+     * @param failed Scratch flags, set for rows that divide by zero or take a negative square root
+     * @param results Receives the result for each row at the same row index
+     */
+    void executeBlock(double[][] columns, int offset, int length, double[][] stack,
+                      boolean[] failed, double[] results) {
+        final int[] code = this.code;
+        final int registerBase = maxStack;
+        boolean anyFailed = false;
+        int sp = 0;
+        int pc = 0;
+        
+        while (pc < code.length) {
+            switch (code[pc]) {
+                case Opcodes.CONST:
+                    Arrays.fill(stack[sp++], 0, length, constants[code[pc + 1]]);
+                    pc += 2;
+                    continue;
+                case Opcodes.LOAD:
+                    System.arraycopy(columns[code[pc + 1]], offset, stack[sp++], 0, length);
+                    pc += 2;
+                    continue;
+                case Opcodes.STORE:
+                    System.arraycopy(stack[sp - 1], 0, stack[registerBase + code[pc + 1]], 0, length);
+                    pc += 2;
+                    continue;
+                case Opcodes.RECALL:
+                    System.arraycopy(stack[registerBase + code[pc + 1]], 0, stack[sp++], 0, length);
+                    pc += 2;
+                    continue;
+                case Opcodes.NEG: {
+                    double[] x = stack[sp - 1];
+                    for (int r = 0; r < length; r++) {
+                        x[r] = -x[r];
+                    }
+                    break;
+                }
+                case Opcodes.SQRT: {
+                    double[] x = stack[sp - 1];
+                    for (int r = 0; r < length; r++) {
+                        if (x[r] < 0) {
+                            if (!anyFailed) {
+                                Arrays.fill(failed, 0, length, false);
+                                anyFailed = true;
+                            }
+                            failed[r] = true;
+                        }
+                        x[r] = Math.sqrt(x[r]);
+                    }
+                    break;
+                }
+                case Opcodes.SQUARE: {
+                    double[] x = stack[sp - 1];
+                    for (int r = 0; r < length; r++) {
+                        x[r] = x[r] * x[r];
+                    }
+                    break;
+                }
+                case Opcodes.CUBE: {
+                    double[] x = stack[sp - 1];
+                    for (int r = 0; r < length; r++) {
+                        x[r] = x[r] * x[r] * x[r];
+                    }
+                    break;
+                }
+                default: {
+                    sp--;
+                    double[] a = stack[sp - 1];
+                    double[] b = stack[sp];
+                    switch (code[pc]) {
+                        case Opcodes.ADD:
+                            for (int r = 0; r < length; r++) {
+                                a[r] = a[r] + b[r];
+                            }
+                            break;
+                        case Opcodes.SUB:
+                            for (int r = 0; r < length; r++) {
+                                a[r] = a[r] - b[r];
+                            }
+                            break;
+                        case Opcodes.MUL:
+                            for (int r = 0; r < length; r++) {
+                                a[r] = a[r] * b[r];
+                            }
+                            break;
+                        case Opcodes.DIV:
+                            for (int r = 0; r < length; r++) {
+                                if (b[r] == 0) {
+                                    if (!anyFailed) {
+                                        Arrays.fill(failed, 0, length, false);
+                                        anyFailed = true;
+                                    }
+                                    failed[r] = true;
+                                }
+                                a[r] = a[r] / b[r];
+                            }
+                            break;
+                        case Opcodes.POW:
+                            for (int r = 0; r < length; r++) {
+                                a[r] = Math.pow(a[r], b[r]);
+                            }
+                            break;
+                        default:
+                            throw new IllegalStateException("Unknown opcode: " + code[pc]);
+                    }
+                }
+            }
+            pc++;
+        }
+        
+        System.arraycopy(stack[0], 0, results, offset, length);
+        if (anyFailed) {
+            for (int r = 0; r < length; r++) {
+                if (failed[r]) {
+                    results[offset + r] = Double.NaN;
+                }
+            }
+        }
+    }
+    
+    int maxStack() {
+        return maxStack;
+    }
+    
+    /**
+     * Returns the number of scratch stack entries an evaluation needs:
+     * the deepest operand stack plus one register per shared subexpression.
+     */
+    int frameSize() {
+        return maxStack + registers;
+    }
+    
+    int registers() {
+        return registers;
+    }
+    
+    int codeLength() {
+        return code.length;
+    }
+    
+    /**
+     * Returns the opcode or operand at an index of the code stream.
+     */
+    int codeAt(int pc) {
+        return code[pc];
+    }
+    
+    int positionAt(int pc) {
+        return positions[pc];
+    }
+    
+    double constantAt(int index) {
+        return constants[index];
+    }
+    
+    /**
+     * Returns a rough estimate of the heap held by this program, in bytes.
+     */
+    long estimatedBytes() {
+        return 80 + 8L * code.length + 8L * constants.length;
+    }
+}
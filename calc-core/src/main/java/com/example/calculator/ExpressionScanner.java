@@ -0,0 +1,342 @@
+package com.example.calculator;
+
+import java.util.Arrays;
+
+/**
+ * ExpressionScanner turns expression text into typed tokens in a single pass.
+ * Tokens are stored as parallel int arrays (kind, start, end) that point back
+ * into the source text, so no substrings are created while scanning.
+ * The display alphabet (×, ÷, −, √, ², %) is read directly, so expressions
+ * from the UI need no preprocessing before they are scanned.
+ * Errors are reported through an EvaluationResult rather than thrown, and so
+ * are inputs over the EvaluationLimits, which are checked during the scan.
+ * A scanner instance can be reused; its buffers grow as needed.
+ */
+final class ExpressionScanner {
+    
+    // Token kinds
+    static final int NUMBER = 0;
+    static final int PLUS = 1;
+    static final int MINUS = 2;
+    static final int TIMES = 3;
+    static final int DIVIDE = 4;
+    static final int POWER = 5;
+    static final int NEGATE = 6;
+    static final int FUNCTION = 7;
+    static final int LEFT_PAREN = 8;
+    static final int RIGHT_PAREN = 9;
+    static final int VARIABLE = 10;
+    // Postfix x² and x%, compiled as x^2 and x/100
+    static final int SQUARE = 11;
+    static final int PERCENT = 12;
+    
+    // Character classes that only exist in the symbol table
+    private static final int WHITESPACE = -1;
+    private static final int INVALID = -2;
+    
+    // Function ids for FUNCTION tokens
+    static final int FN_SQRT = 0;
+    
+    private static final String SQRT = "sqrt";
+    
+    // Token kind, or character class, of every ASCII character
+    private static final int[] ASCII_KINDS = new int[128];
+    
+    static {
+        Arrays.fill(ASCII_KINDS, INVALID);
+        for (char c = '0'; c <= '9'; c++) {
+            ASCII_KINDS[c] = NUMBER;
+        }
+        for (char c = 'a'; c <= 'z'; c++) {
+            ASCII_KINDS[c] = VARIABLE;
+            ASCII_KINDS[Character.toUpperCase(c)] = VARIABLE;
+        }
+        ASCII_KINDS['.'] = NUMBER;
+        ASCII_KINDS['_'] = VARIABLE;
+        ASCII_KINDS[' '] = WHITESPACE;
+        ASCII_KINDS['\t'] = WHITESPACE;
+        ASCII_KINDS['\n'] = WHITESPACE;
+        ASCII_KINDS['\r'] = WHITESPACE;
+        ASCII_KINDS['\f'] = WHITESPACE;
+        ASCII_KINDS[0x0B] = WHITESPACE;
+        ASCII_KINDS['+'] = PLUS;
+        ASCII_KINDS['-'] = MINUS;
+        ASCII_KINDS['*'] = TIMES;
+        ASCII_KINDS['/'] = DIVIDE;
+        ASCII_KINDS['^'] = POWER;
+        ASCII_KINDS['('] = LEFT_PAREN;
+        ASCII_KINDS[')'] = RIGHT_PAREN;
+        ASCII_KINDS['%'] = PERCENT;
+    }
+    
+    private int[] kinds = new int[16];
+    private int[] starts = new int[16];
+    private int[] ends = new int[16];
+    private int[] functions = new int[16];
+    private int count;
+    // Scanned range; positions are reported relative to its start
+    private int origin;
+    private int limit;
+    // Parentheses open and operators seen so far, checked against the limits
+    private int depth;
+    private int operations;
+    
+    /**
+     * Scans src[start, end) into tokens, replacing any previous contents.
+     * A minus sign that cannot be a binary operator is emitted as NEGATE,
+     * and a unary plus is dropped.
+     * @param result Receives the error status and position if scanning fails
+     * @return true if the whole range was scanned, false on an unknown symbol or malformed number
+     */
+    boolean scan(CharSequence src, int start, int end, EvaluationResult result) {
+        return scan(src, start, end, EvaluationLimits.NONE, result);
+    }
+    
+    /**
+     * Scans src[start, end) into tokens like scan(), stopping as soon as the
+     * text exceeds one of the limits. The length is checked before any
+     * character is read, and the other limits as each token is added, so an
+     * oversized input costs no more than scanning up to its limit.
+     * @param result Receives the error status and position if scanning fails or is over a limit
+     * @return true if the whole range was scanned within the limits
+     */
+    boolean scan(CharSequence src, int start, int end, EvaluationLimits limits, EvaluationResult result) {
+        count = 0;
+        origin = start;
+        limit = end;
+        depth = 0;
+        operations = 0;
+        if (!limits.admitLength(end - start, result)) {
+            return false;
+        }
+        int i = start;
+        
+        while (i < end) {
+            int kind = symbolKind(src.charAt(i));
+            int scanned = count;
+            
+            switch (kind) {
+                case WHITESPACE:
+                    i++;
+                    break;
+                case NUMBER:
+                    i = scanNumber(src, i, end, result);
+                    if (i < 0) {
+                        return false;
+                    }
+                    break;
+                case VARIABLE:
+                    i = scanIdentifier(src, i, end);
+                    break;
+                case PLUS:
+                    if (expectsOperator()) {
+                        add(PLUS, i, i + 1);
+                    }
+                    i++;
+                    break;
+                case MINUS:
+                    add(expectsOperator() ? MINUS : NEGATE, i, i + 1);
+                    i++;
+                    break;
+                case FUNCTION:
+                    add(FUNCTION, i, i + 1);
+                    functions[count - 1] = FN_SQRT;
+                    i++;
+                    break;
+                case INVALID:
+                    return result.fail(EvaluationResult.UNEXPECTED_CHARACTER, i - start);
+                default:
+                    add(kind, i, i + 1);
+                    i++;
+                    break;
+            }
+            if (count != scanned && !admit(limits, result)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    /**
+     * Counts the token just added against the limits.
+     * @return true if it is within them, false after recording the limit it exceeds
+     */
+    private boolean admit(EvaluationLimits limits, EvaluationResult result) {
+        int kind = kinds[count - 1];
+        if (count > limits.getMaxTokens()) {
+            return result.fail(EvaluationResult.TOO_MANY_TOKENS, position(count - 1));
+        }
+        switch (kind) {
+            case NUMBER:
+            case VARIABLE:
+                return true;
+            case LEFT_PAREN:
+                if (++depth > limits.getMaxDepth()) {
+                    return result.fail(EvaluationResult.NESTING_TOO_DEEP, position(count - 1));
+                }
+                return true;
+            case RIGHT_PAREN:
+                depth--;
+                return true;
+            default:
+                if (++operations > limits.getMaxOperations()) {
+                    return result.fail(EvaluationResult.TOO_MANY_OPERATIONS, position(count - 1));
+                }
+                return true;
+        }
+    }
+    
+    /**
+     * Maps a character to its token kind or character class.
+     */
+    private static int symbolKind(char c) {
+        if (c < ASCII_KINDS.length) {
+            return ASCII_KINDS[c];
+        }
+        switch (c) {
+            case '×':
+                return TIMES;
+            case '÷':
+                return DIVIDE;
+            case '−':
+                return MINUS;
+            case '√':
+                return FUNCTION;
+            case '²':
+                return SQUARE;
+            default:
+                return INVALID;
+        }
+    }
+    
+    /**
+     * Scans a number span of digits with at most one decimal point.
+     * @return The index after the number, or -1 if it is malformed
+     */
+    private int scanNumber(CharSequence src, int i, int end, EvaluationResult result) {
+        int begin = i;
+        boolean seenDigit = false;
+        boolean seenPoint = false;
+        
+        while (i < end) {
+            char c = src.charAt(i);
+            if (isDigit(c)) {
+                seenDigit = true;
+            } else if (c == '.' && !seenPoint) {
+                seenPoint = true;
+            } else {
+                break;
+            }
+            i++;
+        }
+        
+        if (!seenDigit || (i < end && src.charAt(i) == '.')) {
+            result.fail(EvaluationResult.MALFORMED_NUMBER, begin - origin);
+            return -1;
+        }
+        add(NUMBER, begin, i);
+        return i;
+    }
+    
+    /**
+     * Scans a function name or a variable identifier.
+     * "sqrt" directly followed by something other than a letter is always the
+     * function, so "sqrt9" still reads as sqrt applied to 9.
+     */
+    private int scanIdentifier(CharSequence src, int i, int end) {
+        int begin = i;
+        if (regionMatches(src, i, end, SQRT)
+                && (i + SQRT.length() == end || !isIdentifierStart(src.charAt(i + SQRT.length())))) {
+            add(FUNCTION, i, i + SQRT.length());
+            functions[count - 1] = FN_SQRT;
+            return i + SQRT.length();
+        }
+        
+        i++;
+        while (i < end && (isIdentifierStart(src.charAt(i)) || isDigit(src.charAt(i)))) {
+            i++;
+        }
+        add(VARIABLE, begin, i);
+        return i;
+    }
+    
+    private static boolean isIdentifierStart(char c) {
+        return c < ASCII_KINDS.length && ASCII_KINDS[c] == VARIABLE;
+    }
+    
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+    
+    /**
+     * Returns true if the previous token ends an operand, so a sign here is binary.
+     */
+    private boolean expectsOperator() {
+        if (count == 0) {
+            return false;
+        }
+        int last = kinds[count - 1];
+        return last == NUMBER || last == VARIABLE || last == RIGHT_PAREN
+                || last == SQUARE || last == PERCENT;
+    }
+    
+    private static boolean regionMatches(CharSequence src, int i, int end, String word) {
+        if (end - i < word.length()) {
+            return false;
+        }
+        for (int k = 0; k < word.length(); k++) {
+            if (src.charAt(i + k) != word.charAt(k)) {
+                return false;
+            }
+        }
+        return true;
+    }
+    
+    private void add(int kind, int start, int end) {
+        if (count == kinds.length) {
+            int capacity = count * 2;
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            ends = Arrays.copyOf(ends, capacity);
+            functions = Arrays.copyOf(functions, capacity);
+        }
+        kinds[count] = kind;
+        starts[count] = start;
+        ends[count] = end;
+        count++;
+    }
+    
+    int count() {
+        return count;
+    }
+    
+    int kind(int index) {
+        return kinds[index];
+    }
+    
+    int start(int index) {
+        return starts[index];
+    }
+    
+    int end(int index) {
+        return ends[index];
+    }
+    
+    /**
+     * Returns the length of the scanned range, the position just past the last token.
+     */
+    int length() {
+        return limit - origin;
+    }
+    
+    /**
+     * Returns the offset of a token relative to the start of the scanned range.
+     */
+    int position(int index) {
+        return starts[index] - origin;
+    }
+    
+    int function(int index) {
+        return functions[index];
+    }
+}
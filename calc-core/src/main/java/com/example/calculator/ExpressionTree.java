@@ -0,0 +1,231 @@
+package com.example.calculator;
+
+import java.util.Arrays;
+
+/**
+ * ExpressionTree is the abstract syntax tree of an expression, stored as
+ * parallel arrays indexed by node. Each node has an operation from Opcodes
+ * (CONST, LOAD, a unary or a binary operator), up to two child nodes, and
+ * the source position of the token it came from.
+ * Nodes are appended children first, so the array order is a postorder walk
+ * of the tree and the root is always the last node. Walking the nodes in
+ * order therefore visits them exactly as a stack machine would execute them.
+ * A subexpression that occurs more than once can be computed once: its node
+ * is given a register, and later occurrences become RECALL leaves reading
+ * that register back.
+ * A tree can be reused; its buffers grow as needed.
+ */
+final class ExpressionTree {
+
+    static final int NONE = -1;
+
+    private int[] ops = new int[16];
+    private int[] lefts = new int[16];
+    private int[] rights = new int[16];
+    // Slot of a LOAD node, register of a RECALL node
+    private int[] slots = new int[16];
+    // Value of a CONST node
+    private double[] values = new double[16];
+    private int[] positions = new int[16];
+    // Register that keeps the value of a shared node, or NONE
+    private int[] registers = new int[16];
+    private int count;
+    private int registerCount;
+
+    // Scratch for linearize(), kept so that reusing a tree allocates nothing
+    private int[] copies = new int[0];
+    private int[] pending = new int[0];
+    private int[] operands = new int[0];
+
+    void reset() {
+        count = 0;
+        registerCount = 0;
+    }
+
+    /**
+     * Appends a constant and returns its node index.
+     */
+    int constant(double value, int position) {
+        int node = add(Opcodes.CONST, NONE, NONE, position);
+        values[node] = value;
+        return node;
+    }
+
+    /**
+     * Appends a variable read and returns its node index.
+     */
+    int load(int slot, int position) {
+        int node = add(Opcodes.LOAD, NONE, NONE, position);
+        slots[node] = slot;
+        return node;
+    }
+
+    /**
+     * Appends a unary operator (NEG, SQUARE or CUBE) or function call (SQRT) on an existing node.
+     */
+    int unary(int op, int operand, int position) {
+        return add(op, operand, NONE, position);
+    }
+
+    /**
+     * Appends a binary operator (ADD, SUB, MUL, DIV or POW) on existing nodes.
+     */
+    int binary(int op, int left, int right, int position) {
+        return add(op, left, right, position);
+    }
+
+    /**
+     * Appends a read of an earlier node's value, giving that node a register
+     * if it does not have one yet, and returns the new node index.
+     */
+    int reuse(int node, int position) {
+        if (registers[node] == NONE) {
+            registers[node] = registerCount++;
+        }
+        int recall = add(Opcodes.RECALL, NONE, NONE, position);
+        slots[recall] = registers[node];
+        return recall;
+    }
+
+    /**
+     * Emits the stack program for the tree, one instruction per node plus a
+     * STORE after each node whose value is reused.
+     * @throws IllegalStateException if the nodes do not form a single tree
+     */
+    void emit(ProgramBuilder builder) {
+        for (int node = 0; node < count; node++) {
+            boolean emitted;
+            switch (ops[node]) {
+                case Opcodes.CONST:
+                    builder.emitConstant(values[node], positions[node]);
+                    emitted = true;
+                    break;
+                case Opcodes.LOAD:
+                    builder.emitLoad(slots[node], positions[node]);
+                    emitted = true;
+                    break;
+                case Opcodes.RECALL:
+                    builder.emitRecall(slots[node], positions[node]);
+                    emitted = true;
+                    break;
+                default:
+                    emitted = Opcodes.isUnary(ops[node])
+                            ? builder.emitUnary(ops[node], positions[node])
+                            : builder.emitBinary(ops[node], positions[node]);
+                    break;
+            }
+            if (emitted && registers[node] != NONE) {
+                emitted = builder.emitStore(registers[node], positions[node]);
+            }
+            if (!emitted) {
+                throw new IllegalStateException("Operand missing for node " + node);
+            }
+        }
+    }
+
+    /**
+     * Copies the nodes reachable from a root node into another tree in
+     * postorder, dropping nodes that rewrites left behind. Nodes may be
+     * shared, so this tree can be a DAG; a shared node is copied on its first
+     * visit, and later visits become RECALL leaves instead of copying its
+     * subtree again. Constants and variable reads are cheaper to repeat than
+     * to recall, so they are always copied.
+     * The walk uses explicit stacks, so deep trees cannot overflow the call stack.
+     */
+    void linearize(int root, ExpressionTree into) {
+        into.reset();
+        if (copies.length < root + 1) {
+            copies = new int[root + 1];
+            // Nodes still to visit; ~node marks a node whose children are already copied
+            pending = new int[3 * (root + 1) + 1];
+            // Copies of the visited subtrees, in the order their values will be on the stack
+            operands = new int[root + 2];
+        }
+        final int[] copies = this.copies;
+        final int[] pending = this.pending;
+        final int[] operands = this.operands;
+        Arrays.fill(copies, 0, root + 1, NONE);
+        int pendingCount = 0;
+        int operandCount = 0;
+
+        pending[pendingCount++] = root;
+        while (pendingCount > 0) {
+            int entry = pending[--pendingCount];
+            if (entry < 0) {
+                int node = ~entry;
+                int right = rights[node] == NONE ? NONE : operands[--operandCount];
+                int left = operands[--operandCount];
+                copies[node] = into.add(ops[node], left, right, positions[node]);
+                operands[operandCount++] = copies[node];
+            } else if (lefts[entry] == NONE) {
+                int copy = into.add(ops[entry], NONE, NONE, positions[entry]);
+                into.slots[copy] = slots[entry];
+                into.values[copy] = values[entry];
+                operands[operandCount++] = copy;
+            } else if (copies[entry] != NONE) {
+                operands[operandCount++] = into.reuse(copies[entry], positions[entry]);
+            } else {
+                pending[pendingCount++] = ~entry;
+                if (rights[entry] != NONE) {
+                    pending[pendingCount++] = rights[entry];
+                }
+                pending[pendingCount++] = lefts[entry];
+            }
+        }
+    }
+
+    int count() {
+        return count;
+    }
+
+    int root() {
+        return count - 1;
+    }
+
+    int op(int node) {
+        return ops[node];
+    }
+
+    int left(int node) {
+        return lefts[node];
+    }
+
+    int right(int node) {
+        return rights[node];
+    }
+
+    int slot(int node) {
+        return slots[node];
+    }
+
+    double value(int node) {
+        return values[node];
+    }
+
+    int position(int node) {
+        return positions[node];
+    }
+
+    int registerCount() {
+        return registerCount;
+    }
+
+    private int add(int op, int left, int right, int position) {
+        if (count == ops.length) {
+            int capacity = count * 2;
+            ops = Arrays.copyOf(ops, capacity);
+            lefts = Arrays.copyOf(lefts, capacity);
+            rights = Arrays.copyOf(rights, capacity);
+            slots = Arrays.copyOf(slots, capacity);
+            values = Arrays.copyOf(values, capacity);
+            positions = Arrays.copyOf(positions, capacity);
+            registers = Arrays.copyOf(registers, capacity);
+        }
+        ops[count] = op;
+        lefts[count] = left;
+        rights[count] = right;
+        positions[count] = position;
+        registers[count] = NONE;
+        return count++;
+    }
+}
@@ -0,0 +1,44 @@
+package com.example.calculator;
+
+/**
+ * Opcodes of the compiled postfix program.
+ * CONST is followed by one operand (an index into the constant pool),
+ * LOAD by one operand (a variable slot index), and STORE and RECALL by one
+ * operand (a register index); every other opcode works purely on the
+ * operand stack.
+ */
+final class Opcodes {
+    
+    static final int CONST = 0;
+    static final int ADD = 1;
+    static final int SUB = 2;
+    static final int MUL = 3;
+    static final int DIV = 4;
+    static final int POW = 5;
+    static final int NEG = 6;
+    static final int SQRT = 7;
+    static final int LOAD = 8;
+    // x*x and x*x*x, produced by the optimizer for small integer powers
+    static final int SQUARE = 9;
+    static final int CUBE = 10;
+    // Copy the top of the stack into a register and push it back, for shared subexpressions
+    static final int STORE = 11;
+    static final int RECALL = 12;
+    
+    private Opcodes() {
+    }
+    
+    /**
+     * Returns true for opcodes that replace the top of the stack with a function of it.
+     */
+    static boolean isUnary(int opcode) {
+        return opcode == NEG || opcode == SQRT || opcode == SQUARE || opcode == CUBE;
+    }
+    
+    /**
+     * Returns true for opcodes followed by one operand in the code stream.
+     */
+    static boolean hasOperand(int opcode) {
+        return opcode == CONST || opcode == LOAD || opcode == STORE || opcode == RECALL;
+    }
+}
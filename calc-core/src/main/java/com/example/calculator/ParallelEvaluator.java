@@ -0,0 +1,378 @@
+package com.example.calculator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * ParallelEvaluator spreads large batches over a ForkJoinPool.
+ * Work is split in halves until a piece is no larger than the chunk size;
+ * each piece then runs on its worker's own BatchEvaluator and operand stack,
+ * so nothing is shared on the hot path. Every row and expression is
+ * evaluated exactly as the sequential code would, so results are identical.
+ * A single very large expression can also be split, see evaluate(CompiledExpression, double[]).
+ */
+public final class ParallelEvaluator {
+    
+    public static final int DEFAULT_CHUNK_SIZE = 16 * 1024;
+    
+    private final ForkJoinPool pool;
+    private final boolean ownsPool;
+    private final int chunkSize;
+    
+    // Scratch columns for each worker thread
+    private final ThreadLocal<BatchEvaluator> batchEvaluators = new ThreadLocal<BatchEvaluator>() {
+        @Override
+        protected BatchEvaluator initialValue() {
+            return new BatchEvaluator();
+        }
+    };
+    
+    /**
+     * Creates an evaluator with its own pool.
+     * @param parallelism Number of worker threads
+     * @param chunkSize Largest number of rows or expressions handled by one task, and
+     *                  smallest number of instructions in a part of a split expression
+     */
+    public ParallelEvaluator(int parallelism, int chunkSize) {
+        this(new ForkJoinPool(parallelism), chunkSize, true);
+    }
+    
+    /**
+     * Creates an evaluator that runs on an existing pool, which it never shuts down.
+     * @param pool The pool to run tasks on
+     * @param chunkSize Largest number of rows or expressions handled by one task, and
+     *                  smallest number of instructions in a part of a split expression
+     */
+    public ParallelEvaluator(ForkJoinPool pool, int chunkSize) {
+        this(pool, chunkSize, false);
+    }
+    
+    private ParallelEvaluator(ForkJoinPool pool, int chunkSize, boolean ownsPool) {
+        if (chunkSize <= 0) {
+            throw new IllegalArgumentException("Chunk size must be positive");
+        }
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+        this.ownsPool = ownsPool;
+    }
+    
+    /**
+     * Evaluates one expression over every row of the columns in parallel.
+     * @param expression The compiled expression
+     * @param columns One column per variable slot, each at least results.length long
+     * @param results Receives one result per row; Double.NaN marks rows with errors
+     */
+    public void evaluate(CompiledExpression expression, double[][] columns, double[] results) {
+        BatchEvaluator.checkArguments(expression, columns, results, 0, results.length);
+        pool.invoke(new RowTask(expression, columns, results, 0, results.length));
+    }
+    
+    /**
+     * Evaluates many expressions against the same variable values in parallel.
+     * @param expressions The compiled expressions
+     * @param slots Variable values shared by all expressions, in slot order
+     * @param results Receives expressions[i]'s result at index i
+     */
+    public void evaluateAll(CompiledExpression[] expressions, double[] slots, double[] results) {
+        if (results.length < expressions.length) {
+            throw new IllegalArgumentException("Results array is shorter than the expression array");
+        }
+        pool.invoke(new ExpressionTask(expressions, slots, results, 0, expressions.length));
+    }
+    
+    /**
+     * Evaluates one large expression, running independent parts of it in parallel.
+     * Chains of + and −, chains of × and ÷, and both sides of ^ are cut into
+     * terms that are evaluated as separate tasks; their values are then
+     * combined in source order, so the result is identical to
+     * CompiledExpression.evaluate(double[]). Expressions of at most the chunk
+     * size in instructions are evaluated on the calling thread.
+     * @param slots Variable values in slot order, see CompiledExpression.getVariableNames()
+     * @return The result as a double, or Double.NaN for errors
+     * @throws IllegalArgumentException if fewer values than variables are given
+     */
+    public double evaluate(CompiledExpression expression, double[] slots) {
+        SplitPlan plan = expression.splitPlan(chunkSize);
+        if (plan.root() == null) {
+            return expression.evaluate(slots);
+        }
+        if (slots.length < expression.getVariableCount()) {
+            throw new IllegalArgumentException("Expected " + expression.getVariableCount() + " variable values");
+        }
+        return evaluateSplit(expression.program(), plan.root(), slots, new EvaluationResult());
+    }
+    
+    /**
+     * Evaluates one large expression in parallel parts without throwing,
+     * reporting the same value or first error as CompiledExpression.evaluate.
+     * @param slots Variable values in slot order, see CompiledExpression.getVariableNames()
+     * @param result Receives the value, or the error status and position
+     * @return true if the evaluation succeeded
+     */
+    public boolean evaluate(CompiledExpression expression, double[] slots, EvaluationResult result) {
+        SplitPlan plan = expression.splitPlan(chunkSize);
+        if (plan.root() == null || slots.length < expression.getVariableCount()) {
+            return expression.evaluate(slots, result);
+        }
+        result.reset();
+        double value = evaluateSplit(expression.program(), plan.root(), slots, result);
+        return result.isOk() && result.complete(value);
+    }
+    
+    private double evaluateSplit(ExpressionProgram program, SplitPlan.Part root, double[] slots,
+                                 EvaluationResult result) {
+        PartTask task = new PartTask(program, root, slots, new double[program.registers()], result);
+        pool.invoke(task);
+        return task.value;
+    }
+    
+    /**
+     * Evaluates the groups of a part in parallel and combines their terms.
+     * @return The value, or Double.NaN after recording the first error in the holder
+     */
+    private static double evaluatePart(ExpressionProgram program, SplitPlan.Part part, double[] slots,
+                                       double[] registers, EvaluationResult result) {
+        double[] values = new double[part.termCount()];
+        GroupTask[] groups = new GroupTask[part.groupCount()];
+        for (int g = 0; g < groups.length; g++) {
+            groups[g] = new GroupTask(program, part, g, slots, registers, values);
+        }
+        // With one wave no group recalls a register another group stores, so all
+        // groups fork together; otherwise the waves run one after another
+        if (part.waveCount == 1) {
+            ForkJoinTask.invokeAll(groups);
+        } else {
+            for (int wave = 0; wave < part.waveCount; wave++) {
+                List<GroupTask> tasks = new ArrayList<GroupTask>();
+                for (int g = 0; g < groups.length; g++) {
+                    if (part.waves[g] == wave) {
+                        tasks.add(groups[g]);
+                    }
+                }
+                ForkJoinTask.invokeAll(tasks);
+            }
+        }
+        
+        // Combine in source order, so the first failure in evaluation order is reported
+        double value = 0;
+        int group = 0;
+        for (int k = 0; k < values.length; k++) {
+            if (k == part.groupEnds[group]) {
+                group++;
+            }
+            if (k == groups[group].failedTerm) {
+                EvaluationResult failure = groups[group].result;
+                return fail(result, failure.getStatus(), failure.getErrorPosition());
+            }
+            double term = values[k];
+            if (k == 0) {
+                value = term;
+                continue;
+            }
+            int pc = part.operators[k];
+            switch (program.codeAt(pc)) {
+                case Opcodes.ADD:
+                    value = value + term;
+                    break;
+                case Opcodes.SUB:
+                    value = value - term;
+                    break;
+                case Opcodes.MUL:
+                    value = value * term;
+                    break;
+                case Opcodes.DIV:
+                    if (term == 0) {
+                        return fail(result, EvaluationResult.DIVISION_BY_ZERO, program.positionAt(pc));
+                    }
+                    value = value / term;
+                    break;
+                default:
+                    value = Math.pow(value, term);
+                    break;
+            }
+        }
+        
+        for (int pc : part.trailing) {
+            switch (program.codeAt(pc)) {
+                case Opcodes.STORE:
+                    registers[program.codeAt(pc + 1)] = value;
+                    break;
+                case Opcodes.NEG:
+                    value = -value;
+                    break;
+                case Opcodes.SQRT:
+                    if (value < 0) {
+                        return fail(result, EvaluationResult.NEGATIVE_SQUARE_ROOT, program.positionAt(pc));
+                    }
+                    value = Math.sqrt(value);
+                    break;
+                case Opcodes.SQUARE:
+                    value = value * value;
+                    break;
+                default:
+                    value = value * value * value;
+                    break;
+            }
+        }
+        return value;
+    }
+    
+    private static double fail(EvaluationResult result, int status, int position) {
+        result.fail(status, position);
+        return Double.NaN;
+    }
+    
+    /**
+     * Shuts down the pool if this evaluator created it.
+     */
+    public void shutdown() {
+        if (ownsPool) {
+            pool.shutdown();
+        }
+    }
+    
+    /**
+     * Evaluates a row range of one expression.
+     */
+    private final class RowTask extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final CompiledExpression expression;
+        private final double[][] columns;
+        private final double[] results;
+        private final int from;
+        private final int to;
+        
+        RowTask(CompiledExpression expression, double[][] columns, double[] results, int from, int to) {
+            this.expression = expression;
+            this.columns = columns;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                batchEvaluators.get().evaluate(expression, columns, results, from, to);
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new RowTask(expression, columns, results, from, middle),
+                      new RowTask(expression, columns, results, middle, to));
+        }
+    }
+    
+    /**
+     * Evaluates a range of expressions against shared slot values.
+     */
+    private final class ExpressionTask extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final CompiledExpression[] expressions;
+        private final double[] slots;
+        private final double[] results;
+        private final int from;
+        private final int to;
+        
+        ExpressionTask(CompiledExpression[] expressions, double[] slots, double[] results, int from, int to) {
+            this.expressions = expressions;
+            this.slots = slots;
+            this.results = results;
+            this.from = from;
+            this.to = to;
+        }
+        
+        @Override
+        protected void compute() {
+            if (to - from <= chunkSize) {
+                for (int i = from; i < to; i++) {
+                    results[i] = expressions[i].evaluate(slots);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new ExpressionTask(expressions, slots, results, from, middle),
+                      new ExpressionTask(expressions, slots, results, middle, to));
+        }
+    }
+    
+    /**
+     * Evaluates a whole split expression inside the pool.
+     */
+    private static final class PartTask extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final ExpressionProgram program;
+        private final SplitPlan.Part part;
+        private final double[] slots;
+        private final double[] registers;
+        private final EvaluationResult result;
+        double value;
+        
+        PartTask(ExpressionProgram program, SplitPlan.Part part, double[] slots, double[] registers,
+                 EvaluationResult result) {
+            this.program = program;
+            this.part = part;
+            this.slots = slots;
+            this.registers = registers;
+            this.result = result;
+        }
+        
+        @Override
+        protected void compute() {
+            value = evaluatePart(program, part, slots, registers, result);
+        }
+    }
+    
+    /**
+     * Evaluates one group of terms of a part in order, stopping at the first failure.
+     */
+    private static final class GroupTask extends RecursiveAction {
+        
+        private static final long serialVersionUID = 1L;
+        
+        private final ExpressionProgram program;
+        private final SplitPlan.Part part;
+        private final int group;
+        private final double[] slots;
+        private final double[] registers;
+        private final double[] values;
+        final EvaluationResult result = new EvaluationResult();
+        // Term whose evaluation failed, or -1
+        int failedTerm = -1;
+        
+        GroupTask(ExpressionProgram program, SplitPlan.Part part, int group, double[] slots,
+                  double[] registers, double[] values) {
+            this.program = program;
+            this.part = part;
+            this.group = group;
+            this.slots = slots;
+            this.registers = registers;
+            this.values = values;
+        }
+        
+        @Override
+        protected void compute() {
+            // Tasks this thread runs while joining nested parts may grow its scratch
+            // stack, but never use it across a term, so keeping the reference is safe
+            double[] stack = CalculatorLogic.operandStack(program);
+            for (int k = part.groupStart(group); k < part.groupEnds[group]; k++) {
+                SplitPlan.Part split = part.parts[k];
+                values[k] = split != null
+                        ? evaluatePart(program, split, slots, registers, result)
+                        : program.executeRange(part.starts[k], part.ends[k], slots, stack, registers, result);
+                if (!result.isOk()) {
+                    failedTerm = k;
+                    return;
+                }
+            }
+        }
+    }
+}
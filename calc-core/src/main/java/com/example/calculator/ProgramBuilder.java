@@ -0,0 +1,160 @@
+package com.example.calculator;
+
+import java.util.Arrays;
+
+/**
+ * ProgramBuilder collects opcodes and constants for an ExpressionProgram.
+ * It tracks the operand stack depth while instructions are emitted and
+ * rejects programs that would underflow or leave more than one result.
+ * Each instruction records the source position of the token it came from,
+ * so runtime errors can point back into the expression.
+ * A builder can be reused after build() by calling reset(). A program that
+ * is only run once can be run in place with execute(), without being built.
+ */
+final class ProgramBuilder {
+    
+    private int[] code = new int[32];
+    // Source position of each instruction, indexed like code
+    private int[] positions = new int[32];
+    private int codeLength;
+    private double[] constants = new double[8];
+    private int constantCount;
+    private int depth;
+    private int maxDepth;
+    private int registerCount;
+    
+    void reset() {
+        codeLength = 0;
+        constantCount = 0;
+        depth = 0;
+        maxDepth = 0;
+        registerCount = 0;
+    }
+    
+    /**
+     * Emits a CONST instruction pushing the given value.
+     */
+    void emitConstant(double value, int position) {
+        if (constantCount == constants.length) {
+            constants = Arrays.copyOf(constants, constantCount * 2);
+        }
+        constants[constantCount] = value;
+        append(Opcodes.CONST, position);
+        append(constantCount++, position);
+        push();
+    }
+    
+    /**
+     * Emits a LOAD instruction pushing the value of a variable slot.
+     */
+    void emitLoad(int slot, int position) {
+        append(Opcodes.LOAD, position);
+        append(slot, position);
+        push();
+    }
+    
+    /**
+     * Emits a STORE instruction keeping a copy of the top of the stack in a register.
+     * @return false, emitting nothing, if the stack is empty
+     */
+    boolean emitStore(int register, int position) {
+        if (depth < 1) {
+            return false;
+        }
+        append(Opcodes.STORE, position);
+        append(register, position);
+        useRegister(register);
+        return true;
+    }
+    
+    /**
+     * Emits a RECALL instruction pushing the value kept in a register.
+     */
+    void emitRecall(int register, int position) {
+        append(Opcodes.RECALL, position);
+        append(register, position);
+        useRegister(register);
+        push();
+    }
+    
+    /**
+     * Emits a binary operator (ADD, SUB, MUL, DIV or POW).
+     * @return false, emitting nothing, if fewer than two operands are on the stack
+     */
+    boolean emitBinary(int opcode, int position) {
+        if (depth < 2) {
+            return false;
+        }
+        append(opcode, position);
+        depth--;
+        return true;
+    }
+    
+    /**
+     * Emits a unary operator (NEG, SQRT, SQUARE or CUBE).
+     * @return false, emitting nothing, if the stack is empty
+     */
+    boolean emitUnary(int opcode, int position) {
+        if (depth < 1) {
+            return false;
+        }
+        append(opcode, position);
+        return true;
+    }
+    
+    /**
+     * Returns true if the program emitted so far leaves exactly one result.
+     */
+    boolean isComplete() {
+        return depth == 1;
+    }
+    
+    ExpressionProgram build() {
+        if (depth != 1) {
+            throw new IllegalArgumentException("Invalid expression");
+        }
+        return new ExpressionProgram(Arrays.copyOf(code, codeLength), Arrays.copyOf(positions, codeLength),
+                Arrays.copyOf(constants, constantCount), maxDepth, registerCount);
+    }
+    
+    /**
+     * Runs the program emitted so far without copying it into an ExpressionProgram.
+     * The program must be complete.
+     * @param stack Scratch stack with at least frameSize() entries
+     * @param result Receives the status and source position of an error, or null
+     * @return The result, or Double.NaN for division by zero or the square root of a negative number
+     */
+    double execute(double[] slots, double[] stack, EvaluationResult result) {
+        return ExpressionProgram.execute(code, positions, constants, 0, codeLength, slots, stack, stack, maxDepth,
+                result);
+    }
+    
+    /**
+     * Returns the number of scratch stack entries execute() needs, like ExpressionProgram.frameSize().
+     */
+    int frameSize() {
+        return maxDepth + registerCount;
+    }
+    
+    private void push() {
+        depth++;
+        if (depth > maxDepth) {
+            maxDepth = depth;
+        }
+    }
+    
+    private void useRegister(int register) {
+        if (register >= registerCount) {
+            registerCount = register + 1;
+        }
+    }
+    
+    private void append(int value, int position) {
+        if (codeLength == code.length) {
+            code = Arrays.copyOf(code, codeLength * 2);
+            positions = Arrays.copyOf(positions, codeLength * 2);
+        }
+        positions[codeLength] = position;
+        code[codeLength++] = value;
+    }
+}
@@ -0,0 +1,301 @@
+package com.example.calculator;
+
+import java.util.Arrays;
+
+/**
+ * SplitPlan divides a large program into parts that ParallelEvaluator runs
+ * on different threads. A chain of operators of one level (+ and −, or × and
+ * ÷) is cut into its terms, and the two sides of ^ into two terms.
+ * Consecutive terms are packed into groups of at least the threshold number
+ * of instructions, one task per group, and terms larger than the threshold
+ * are split again in turn.
+ * The term values are combined one at a time from left to right, with the
+ * same operations the interpreter uses, so results do not depend on the split.
+ * A group that recalls a shared subexpression stored by an earlier group of
+ * the same chain runs in a later wave than that group, so a register is
+ * always written before it is read.
+ */
+final class SplitPlan {
+
+    // Parts nested deeper than this run sequentially, bounding the recursion
+    private static final int MAX_DEPTH = 32;
+
+    private final int threshold;
+    private final Part root;
+
+    /**
+     * @param threshold Smallest number of instructions worth a task of its own
+     */
+    SplitPlan(ExpressionProgram program, int threshold) {
+        this.threshold = threshold;
+        this.root = program.codeLength() > threshold
+                ? new Builder(program, threshold).build(0, program.codeLength(), 0)
+                : null;
+    }
+
+    int threshold() {
+        return threshold;
+    }
+
+    /**
+     * Returns the split of the whole program, or null if it is best run sequentially.
+     */
+    Part root() {
+        return root;
+    }
+
+    /**
+     * A subexpression computed as terms combined from left to right, followed
+     * by the unary operations and register stores applied to the result.
+     */
+    static final class Part {
+
+        // Code range of each term
+        final int[] starts;
+        final int[] ends;
+        // Split terms, or null for terms the interpreter runs as they are
+        final Part[] parts;
+        // Instruction combining the value so far with term k, for k >= 1
+        final int[] operators;
+        // Exclusive end of each group of terms that one task evaluates in order
+        final int[] groupEnds;
+        // Groups of one wave run in parallel, after every group of the waves before it
+        final int[] waves;
+        final int waveCount;
+        // Instructions applied to the combined value, in program order
+        final int[] trailing;
+
+        Part(int[] starts, int[] ends, Part[] parts, int[] operators, int[] groupEnds, int[] waves,
+             int waveCount, int[] trailing) {
+            this.starts = starts;
+            this.ends = ends;
+            this.parts = parts;
+            this.operators = operators;
+            this.groupEnds = groupEnds;
+            this.waves = waves;
+            this.waveCount = waveCount;
+            this.trailing = trailing;
+        }
+
+        int termCount() {
+            return starts.length;
+        }
+
+        int groupCount() {
+            return groupEnds.length;
+        }
+
+        int groupStart(int group) {
+            return group == 0 ? 0 : groupEnds[group - 1];
+        }
+    }
+
+    /**
+     * Finds subexpression boundaries with one pass over the program, then cuts
+     * ranges of it into parts.
+     */
+    private static final class Builder {
+
+        private final ExpressionProgram program;
+        private final int threshold;
+        // Start of the subexpression ending with each instruction
+        private final int[] startOf;
+        // Previous instruction, indexed by instruction and by the code length
+        private final int[] previous;
+        // Instruction storing each register
+        private final int[] storeOf;
+
+        Builder(ExpressionProgram program, int threshold) {
+            this.program = program;
+            this.threshold = threshold;
+            int length = program.codeLength();
+            startOf = new int[length];
+            previous = new int[length + 1];
+            storeOf = new int[program.registers()];
+
+            int[] starts = new int[program.maxStack()];
+            int sp = 0;
+            int last = -1;
+            int pc = 0;
+            while (pc < length) {
+                int opcode = program.codeAt(pc);
+                switch (opcode) {
+                    case Opcodes.CONST:
+                    case Opcodes.LOAD:
+                    case Opcodes.RECALL:
+                        starts[sp++] = pc;
+                        break;
+                    case Opcodes.STORE:
+                        storeOf[program.codeAt(pc + 1)] = pc;
+                        break;
+                    default:
+                        if (!Opcodes.isUnary(opcode)) {
+                            sp--;
+                        }
+                        break;
+                }
+                startOf[pc] = starts[sp - 1];
+                previous[pc] = last;
+                last = pc;
+                pc += Opcodes.hasOperand(opcode) ? 2 : 1;
+            }
+            previous[length] = last;
+        }
+
+        /**
+         * Splits the subexpression in [start, end).
+         * @return The part, or null if splitting it gains no parallelism
+         */
+        Part build(int start, int end, int depth) {
+            // Peel off unary operations and stores applied to the whole range
+            int[] trailing = new int[4];
+            int trailingCount = 0;
+            int core = end;
+            while (true) {
+                int pc = previous[core];
+                int opcode = program.codeAt(pc);
+                if (opcode != Opcodes.STORE && !Opcodes.isUnary(opcode)) {
+                    break;
+                }
+                trailing = grow(trailing, trailingCount);
+                trailing[trailingCount++] = pc;
+                core = pc;
+            }
+            trailing = reversed(trailing, trailingCount);
+
+            int top = previous[core];
+            int opcode = program.codeAt(top);
+            if (opcode == Opcodes.CONST || opcode == Opcodes.LOAD || opcode == Opcodes.RECALL) {
+                return null;
+            }
+
+            // Walk down the left spine of the chain, collecting terms right to left
+            int[] starts = new int[8];
+            int[] ends = new int[8];
+            int[] operators = new int[8];
+            int terms = 0;
+            int node = top;
+            while (true) {
+                starts = grow(starts, terms + 1);
+                ends = grow(ends, terms + 1);
+                operators = grow(operators, terms + 1);
+                int rightStart = startOf[previous[node]];
+                starts[terms] = rightStart;
+                ends[terms] = node;
+                operators[terms++] = node;
+                int leftLast = previous[rightStart];
+                if (opcode == Opcodes.POW || !sameLevel(opcode, program.codeAt(leftLast))) {
+                    starts[terms] = start;
+                    ends[terms] = rightStart;
+                    operators[terms++] = -1;
+                    break;
+                }
+                node = leftLast;
+            }
+            starts = reversed(starts, terms);
+            ends = reversed(ends, terms);
+            operators = reversed(operators, terms);
+
+            int[] groupEnds = new int[8];
+            int groups = 0;
+            int t = 0;
+            while (t < terms) {
+                int size = 0;
+                do {
+                    size += ends[t] - starts[t];
+                    t++;
+                } while (t < terms && size < threshold);
+                groupEnds = grow(groupEnds, groups);
+                groupEnds[groups++] = t;
+            }
+            groupEnds = Arrays.copyOf(groupEnds, groups);
+            int[] waves = waves(start, starts, ends, groupEnds);
+
+            Part[] parts = new Part[terms];
+            boolean nested = false;
+            if (depth + 1 < MAX_DEPTH) {
+                for (int k = 0; k < terms; k++) {
+                    if (ends[k] - starts[k] > threshold) {
+                        parts[k] = build(starts[k], ends[k], depth + 1);
+                        nested |= parts[k] != null;
+                    }
+                }
+            }
+            // Without a wave of two or more groups, only nested parts can run in parallel
+            int waveCount = 0;
+            for (int wave : waves) {
+                waveCount = Math.max(waveCount, wave + 1);
+            }
+            if (waveCount == groups && !nested) {
+                return null;
+            }
+            return new Part(starts, ends, parts, operators, groupEnds, waves, waveCount, trailing);
+        }
+
+        /**
+         * Returns the wave of each group: one more than the latest wave of the
+         * groups storing registers it recalls, or 0 if it recalls none of them.
+         * Terms are scanned in order, so a group's wave is final before any
+         * later group depends on it.
+         */
+        private int[] waves(int start, int[] starts, int[] ends, int[] groupEnds) {
+            int[] waves = new int[groupEnds.length];
+            int group = 0;
+            for (int k = 0; k < starts.length; k++) {
+                if (k == groupEnds[group]) {
+                    group++;
+                }
+                int groupStart = group == 0 ? start : starts[groupEnds[group - 1]];
+                int pc = starts[k];
+                while (pc < ends[k]) {
+                    int opcode = program.codeAt(pc);
+                    if (opcode == Opcodes.RECALL) {
+                        int store = storeOf[program.codeAt(pc + 1)];
+                        // Stores earlier in the same group already ran on this group's thread
+                        if (store >= start && store < groupStart) {
+                            int owner = Arrays.binarySearch(starts, 0, k, store);
+                            if (owner < 0) {
+                                owner = -owner - 2;
+                            }
+                            int ownerGroup = Arrays.binarySearch(groupEnds, 0, group, owner + 1);
+                            if (ownerGroup < 0) {
+                                ownerGroup = -ownerGroup - 1;
+                            }
+                            waves[group] = Math.max(waves[group], waves[ownerGroup] + 1);
+                        }
+                    }
+                    pc += Opcodes.hasOperand(opcode) ? 2 : 1;
+                }
+            }
+            return waves;
+        }
+
+        private static boolean sameLevel(int opcode, int other) {
+            if (opcode == Opcodes.ADD || opcode == Opcodes.SUB) {
+                return other == Opcodes.ADD || other == Opcodes.SUB;
+            }
+            if (opcode == Opcodes.MUL || opcode == Opcodes.DIV) {
+                return other == Opcodes.MUL || other == Opcodes.DIV;
+            }
+            return false;
+        }
+
+        /**
+         * Returns the array, doubled if it has no room at the given index.
+         */
+        private static int[] grow(int[] values, int index) {
+            return index < values.length ? values : Arrays.copyOf(values, values.length * 2);
+        }
+
+        /**
+         * Returns the first count values in reverse order, in an array of exactly that length.
+         */
+        private static int[] reversed(int[] values, int count) {
+            int[] result = new int[count];
+            for (int i = 0; i < count; i++) {
+                result[i] = values[count - 1 - i];
+            }
+            return result;
+        }
+    }
+}
@@ -0,0 +1,65 @@
+package com.example.calculator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Closure trees evaluate recursively, so trees deeper than
+ * ClosureCompiler.MAX_DEPTH must stay with the interpreter instead of
+ * overflowing the stack on valid input.
+ */
+public class ClosureCompilerTest {
+
+    @After
+    public void tearDown() {
+        CalculatorLogic.setClosureEvaluation(false);
+    }
+
+    @Test
+    public void treesUpToMaxDepthAreCompiled() {
+        CalculatorLogic.setClosureEvaluation(true);
+        // A chain of n terms is a left-deep tree n levels high
+        assertNotNull(CalculatorLogic.compile(sum(ClosureCompiler.MAX_DEPTH), "x").closure());
+        assertNull(CalculatorLogic.compile(sum(ClosureCompiler.MAX_DEPTH + 1), "x").closure());
+    }
+
+    @Test
+    public void longFlatSumIsInterpretedOnSmallStack() throws InterruptedException {
+        CalculatorLogic.setClosureEvaluation(true);
+        final CompiledExpression expression = CalculatorLogic.compile(sum(20_000), "x");
+        assertNull(expression.closure());
+
+        final double[] value = new double[1];
+        final Throwable[] failure = new Throwable[1];
+        Thread thread = new Thread(null, new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    value[0] = expression.evaluate(new double[] {0.5});
+                } catch (Throwable e) {
+                    failure[0] = e;
+                }
+            }
+        }, "small-stack", 256 * 1024);
+        thread.start();
+        thread.join();
+
+        assertNull(failure[0]);
+        assertEquals(10_000.0, value[0], 0.0);
+    }
+
+    /**
+     * Returns "x+x+...+x" with the given number of terms.
+     */
+    private static String sum(int terms) {
+        StringBuilder expression = new StringBuilder("x");
+        for (int i = 1; i < terms; i++) {
+            expression.append("+x");
+        }
+        return expression.toString();
+    }
+}
@@ -0,0 +1,133 @@
+package com.example.calculator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.util.Random;
+
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+/**
+ * Random expressions must give the interpreter's bits, error status and
+ * position on every other path: closure trees, batches and parallel splits.
+ */
+public class DifferentialFuzzTest {
+
+    private static final String[] VARIABLES = {"a", "b", "c"};
+    private static final String[] OPERATORS = {"+", "-", "−", "×", "÷", "^"};
+    private static final int EXPRESSIONS = 2000;
+    private static final int ROWS = 37;
+
+    // A chunk size this small splits nearly every expression
+    private static final ParallelEvaluator PARALLEL = new ParallelEvaluator(4, 4);
+
+    @After
+    public void tearDown() {
+        CalculatorLogic.setClosureEvaluation(false);
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        PARALLEL.shutdown();
+    }
+
+    @Test
+    public void everyPathMatchesInterpreter() {
+        Random random = new Random(2024);
+        BatchEvaluator batch = new BatchEvaluator(16);
+        double[][] columns = new double[VARIABLES.length][ROWS];
+        double[] batchResults = new double[ROWS];
+        for (int n = 0; n < EXPRESSIONS; n++) {
+            String text = expression(random, 1 + random.nextInt(6));
+            CalculatorLogic.setClosureEvaluation(false);
+            CompiledExpression interpreted = CalculatorLogic.compile(text, VARIABLES);
+            CalculatorLogic.setClosureEvaluation(true);
+            CompiledExpression closure = CalculatorLogic.compile(text, VARIABLES);
+            assertNotNull(text, closure.closure());
+
+            for (double[] column : columns) {
+                for (int row = 0; row < ROWS; row++) {
+                    column[row] = value(random);
+                }
+            }
+            batch.evaluate(interpreted, columns, batchResults);
+
+            double[] slots = new double[VARIABLES.length];
+            for (int row = 0; row < ROWS; row++) {
+                for (int i = 0; i < slots.length; i++) {
+                    slots[i] = columns[i][row];
+                }
+                EvaluationResult expected = new EvaluationResult();
+                interpreted.evaluate(slots, expected);
+                long value = bits(interpreted.evaluate(slots));
+                String where = text + " at row " + row;
+
+                EvaluationResult actual = new EvaluationResult();
+                closure.evaluate(slots, actual);
+                assertSameOutcome(where, expected, actual);
+                assertEquals(where, value, bits(closure.evaluate(slots)));
+
+                PARALLEL.evaluate(interpreted, slots, actual);
+                assertSameOutcome(where, expected, actual);
+                assertEquals(where, value, bits(PARALLEL.evaluate(interpreted, slots)));
+
+                assertEquals(where, value, bits(batchResults[row]));
+            }
+        }
+    }
+
+    private static void assertSameOutcome(String where, EvaluationResult expected, EvaluationResult actual) {
+        assertEquals(where, expected.getStatus(), actual.getStatus());
+        assertEquals(where, expected.getErrorPosition(), actual.getErrorPosition());
+        assertEquals(where, bits(expected.getValue()), bits(actual.getValue()));
+    }
+
+    private static long bits(double value) {
+        return Double.doubleToLongBits(value);
+    }
+
+    /**
+     * Returns a random expression over VARIABLES nested at most depth levels.
+     */
+    private static String expression(Random random, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    return Integer.toString(random.nextInt(10));
+                case 1:
+                    return random.nextInt(100) + "." + random.nextInt(100);
+                default:
+                    return VARIABLES[random.nextInt(VARIABLES.length)];
+            }
+        }
+        switch (random.nextInt(8)) {
+            case 0:
+                return "-" + expression(random, depth - 1);
+            case 1:
+                return "√(" + expression(random, depth - 1) + ")";
+            case 2:
+                return "(" + expression(random, depth - 1) + ")" + (random.nextBoolean() ? "²" : "%");
+            case 3:
+                return "(" + expression(random, depth - 1) + ")";
+            default:
+                return expression(random, depth - 1) + OPERATORS[random.nextInt(OPERATORS.length)]
+                        + expression(random, depth - 1);
+        }
+    }
+
+    /**
+     * Returns a variable value, often zero or negative so evaluations fail.
+     */
+    private static double value(Random random) {
+        switch (random.nextInt(5)) {
+            case 0:
+                return 0;
+            case 1:
+                return random.nextInt(7) - 3;
+            default:
+                return (random.nextDouble() - 0.4) * Math.pow(10, random.nextInt(6) - 3);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.example.calculator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Limits are off unless a caller asks for them, either for every
+ * evaluation through CalculatorLogic.setLimits or for one Evaluator.
+ */
+public class EvaluationLimitsTest {
+
+    // 30,000 terms: 59,999 tokens, over EvaluationLimits.UNTRUSTED
+    private static final String LONG_SUM = sum(30_000);
+
+    private static final EvaluationLimits SMALL = new EvaluationLimits(20, 2, 5, 3);
+
+    @After
+    public void tearDown() {
+        CalculatorLogic.setLimits(EvaluationLimits.NONE);
+    }
+
+    @Test
+    public void largeInputIsAdmittedByDefault() {
+        assertEquals(EvaluationLimits.NONE, CalculatorLogic.getLimits());
+        assertEquals(30_000.0, CalculatorLogic.evaluate(LONG_SUM), 0.0);
+        assertEquals(30_000.0, CalculatorLogic.compile(LONG_SUM).evaluate(), 0.0);
+    }
+
+    @Test
+    public void evaluatorLimitsOverrideGlobalLimits() {
+        EvaluationResult result = new EvaluationResult();
+        new Evaluator(EvaluationLimits.UNTRUSTED).evaluate(LONG_SUM, result);
+        assertEquals(EvaluationResult.TOO_MANY_TOKENS, result.getStatus());
+        assertNull(new Evaluator(EvaluationLimits.UNTRUSTED).compile(LONG_SUM, result));
+        assertEquals(EvaluationResult.TOO_MANY_TOKENS, result.getStatus());
+
+        CalculatorLogic.setLimits(EvaluationLimits.UNTRUSTED);
+        CalculatorLogic.evaluate(LONG_SUM, result);
+        assertEquals(EvaluationResult.TOO_MANY_TOKENS, result.getStatus());
+        assertTrue(new Evaluator(EvaluationLimits.NONE).evaluate(LONG_SUM, result));
+        assertEquals(30_000.0, result.getValue(), 0.0);
+        assertNotNull(new Evaluator(EvaluationLimits.NONE).compile(LONG_SUM, result));
+    }
+
+    @Test
+    public void eachLimitHasItsOwnStatus() {
+        Evaluator evaluator = new Evaluator(SMALL);
+        EvaluationResult result = new EvaluationResult();
+        assertTrue(evaluator.evaluate("1+2+3", result));
+        assertStatus(evaluator, "1 + 2 + 3 + 4 + 5 + 6", EvaluationResult.EXPRESSION_TOO_LONG);
+        assertStatus(evaluator, "(((1)))", EvaluationResult.NESTING_TOO_DEEP);
+        assertStatus(evaluator, "1+2+3+4", EvaluationResult.TOO_MANY_TOKENS);
+        assertStatus(evaluator, "----1", EvaluationResult.TOO_MANY_OPERATIONS);
+    }
+
+    private static void assertStatus(Evaluator evaluator, String text, int status) {
+        EvaluationResult result = new EvaluationResult();
+        evaluator.evaluate(text, result);
+        assertEquals(text, status, result.getStatus());
+        assertTrue(text, result.isRejected());
+    }
+
+    /**
+     * Returns "1+1+...+1" with the given number of terms.
+     */
+    private static String sum(int terms) {
+        StringBuilder expression = new StringBuilder("1");
+        for (int i = 1; i < terms; i++) {
+            expression.append("+1");
+        }
+        return expression.toString();
+    }
+}
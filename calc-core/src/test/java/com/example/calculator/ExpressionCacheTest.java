@@ -0,0 +1,91 @@
+package com.example.calculator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * A cache hit must give the same outcome as compiling the text itself:
+ * whitespace that the scanner reads as a separator or rejects must not let
+ * one cached plan stand in for a different expression.
+ */
+public class ExpressionCacheTest {
+
+    // Each group holds texts that differ only in whitespace, in the order they are cached
+    private static final String[][] GROUPS = {
+        {"12", "1 2", "1  2", "1\t2"},
+        {"1+2", "1 + 2", " 1+2 ", "1\n+\r2"},
+        {"1.5", "1 .5", "1. 5"},
+        {"√4", "√ 4", "sqrt 4", "sqrt4", "sq rt4"},
+        {"50%", "50 %", "1+50%", "1+50 %"},
+        {"1+2", "1 +2", "1+ 2", "1+2　", "1+\f2"},
+        {"(1)(2)", "(1) (2)"},
+    };
+
+    @After
+    public void tearDown() {
+        CalculatorLogic.setCache(null);
+    }
+
+    @Test
+    public void cacheHitGivesSameOutcomeAsCompiling() {
+        for (String[] group : GROUPS) {
+            for (int first = 0; first < group.length; first++) {
+                CalculatorLogic.setCache(new ExpressionCache(16, 1 << 20));
+                outcome(group[first], true);
+                for (String text : group) {
+                    assertEquals(text, outcome(text, false), outcome(text, true));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void insignificantWhitespaceSharesOnePlan() {
+        ExpressionCache cache = new ExpressionCache(16, 1 << 20);
+        cache.compile("1+2");
+        cache.compile(" 1 + 2 ");
+        cache.compile("1\t+\n2");
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.hitCount());
+    }
+
+    @Test
+    public void spaceKeepsVariableNamesApart() {
+        ExpressionCache cache = new ExpressionCache(16, 1 << 20);
+        assertEquals(1, cache.compile("ab").getVariableCount());
+        try {
+            cache.compile("a b");
+            fail("Two adjacent names must not hit the plan for one name");
+        } catch (IllegalArgumentException expected) {
+        }
+        assertEquals(2, cache.compile("a + b").getVariableCount());
+        assertEquals(2, cache.compile("a+b").getVariableCount());
+    }
+
+    @Test
+    public void unicodeSpaceIsRejectedAfterCacheHit() {
+        CalculatorLogic.setCache(new ExpressionCache(16, 1 << 20));
+        EvaluationResult result = new EvaluationResult();
+        CalculatorLogic.evaluate("1+2", result);
+        CalculatorLogic.evaluate("1+\u00A02", result);
+        assertEquals(EvaluationResult.UNEXPECTED_CHARACTER, result.getStatus());
+        assertEquals(2, result.getErrorPosition());
+    }
+
+    /**
+     * Returns the value of the text, or the message it is rejected with.
+     */
+    private static String outcome(String text, boolean cached) {
+        try {
+            CompiledExpression compiled = cached
+                    ? CalculatorLogic.compile(text)
+                    : CalculatorLogic.compileExpression(text);
+            return "value " + compiled.evaluate();
+        } catch (IllegalArgumentException e) {
+            return "error " + e.getMessage();
+        }
+    }
+}
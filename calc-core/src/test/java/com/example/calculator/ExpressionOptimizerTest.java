@@ -0,0 +1,40 @@
+package com.example.calculator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.math.BigDecimal;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Folding a constant must give the bits the same operation gives at run
+ * time, so an expression does not change value when a variable in it is
+ * replaced by its value.
+ */
+public class ExpressionOptimizerTest {
+
+    private static final double[] BASES = {0.0004, 1.1, 3.3, -2.7, 1e-110, 123456.789, 0.1};
+
+    @Test
+    public void foldedPowersMatchRunTime() {
+        Random random = new Random(17);
+        for (int exponent = 1; exponent <= 4; exponent++) {
+            for (double x : BASES) {
+                assertSamePower(x, exponent);
+            }
+            for (int i = 0; i < 1000; i++) {
+                assertSamePower((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 10), exponent);
+            }
+        }
+    }
+
+    private static void assertSamePower(double x, int exponent) {
+        // The exact decimal expansion parses back to the same double
+        String base = "(" + new BigDecimal(x).toPlainString() + ")";
+        double folded = CalculatorLogic.evaluate(base + "^" + exponent);
+        double evaluated = CalculatorLogic.compile("a^" + exponent, "a").evaluate(new double[] {x});
+        assertEquals(base + "^" + exponent,
+                Double.doubleToLongBits(evaluated), Double.doubleToLongBits(folded));
+    }
+}
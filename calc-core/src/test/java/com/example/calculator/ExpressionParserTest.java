@@ -0,0 +1,94 @@
+package com.example.calculator;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+/**
+ * The parser must build the tree the calculator's grammar describes:
+ * × and ÷ before + and −, both left-associative; ^ right-associative and
+ * tighter than a leading minus; postfix ² and % applying to the whole
+ * operand before them.
+ */
+public class ExpressionParserTest {
+
+    @Test
+    public void multiplicationBindsTighterThanAddition() {
+        assertValue(7, "1+2×3");
+        assertValue(7, "2×3+1");
+        assertValue(9, "(1+2)×3");
+        assertValue(5, "1+8÷2");
+        assertValue(18, "2×3²");
+    }
+
+    @Test
+    public void sameLevelOperatorsAreLeftAssociative() {
+        assertValue(-4, "1-2-3");
+        assertValue(1, "8÷4÷2");
+        assertValue(3, "6÷2×1");
+        assertValue(0, "1−2+1");
+    }
+
+    @Test
+    public void powerIsRightAssociative() {
+        assertValue(512, "2^3^2");
+        assertValue(64, "(2^3)^2");
+        assertValue(Math.sqrt(2), "2^2^-1");
+        assertEquals(512, CalculatorLogic.compile("a^b^c", "a", "b", "c")
+                .evaluate(new double[] {2, 3, 2}), 0.0);
+    }
+
+    @Test
+    public void leadingMinusAppliesAfterPower() {
+        assertValue(-4, "-2^2");
+        assertValue(-4, "−2^2");
+        assertValue(-4, "-2²");
+        assertValue(4, "(-2)^2");
+        assertValue(0.5, "2^-1");
+        assertValue(0.5, "2^−1");
+        assertValue(-6, "2×-3");
+        assertValue(2, "--2");
+        assertValue(2, "1−−1");
+        assertValue(-2, "-√4");
+        assertEquals(-4, CalculatorLogic.compile("-a^2", "a").evaluate(new double[] {2}), 0.0);
+    }
+
+    @Test
+    public void postfixOperatorsApplyToTheWholeOperandBefore() {
+        assertValue(0.5, "50%");
+        assertValue(100.5, "100+50%");
+        assertValue(1, "2×50%");
+        assertValue(0.25, "50%²");
+        assertValue(0.25, "5²%");
+        assertValue(81, "3²²");
+        assertValue(Math.pow(2, 50) / 100, "2^50%");
+        assertValue(200.0 / 100 / 100, "200%%");
+        assertValue(4, "√(4)²");
+    }
+
+    @Test
+    public void malformedInputReportsItsPosition() {
+        assertRejected("1+×2", EvaluationResult.SYNTAX_ERROR, 2);
+        assertRejected("1+", EvaluationResult.SYNTAX_ERROR, 2);
+        assertRejected("2 3", EvaluationResult.SYNTAX_ERROR, 2);
+        assertRejected("2(3)", EvaluationResult.SYNTAX_ERROR, 1);
+        assertRejected("%5", EvaluationResult.SYNTAX_ERROR, 0);
+        assertRejected("()", EvaluationResult.SYNTAX_ERROR, 1);
+        assertRejected("(1+2", EvaluationResult.UNBALANCED_PARENTHESES, 0);
+        assertRejected("1+2)", EvaluationResult.UNBALANCED_PARENTHESES, 3);
+    }
+
+    private static void assertValue(double expected, String text) {
+        EvaluationResult result = new EvaluationResult();
+        CalculatorLogic.evaluate(text, result);
+        assertEquals(text, EvaluationResult.OK, result.getStatus());
+        assertEquals(text, expected, result.getValue(), 0.0);
+    }
+
+    private static void assertRejected(String text, int status, int position) {
+        EvaluationResult result = new EvaluationResult();
+        CalculatorLogic.evaluate(text, result);
+        assertEquals(text, status, result.getStatus());
+        assertEquals(text, position, result.getErrorPosition());
+    }
+}
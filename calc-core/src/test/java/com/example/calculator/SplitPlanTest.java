@@ -0,0 +1,110 @@
+package com.example.calculator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.AfterClass;
+import org.junit.Test;
+
+/**
+ * Groups of a split chain run in parallel only when none of them recalls a
+ * register another stores; the split must never change a value, an error
+ * status or its position.
+ */
+public class SplitPlanTest {
+
+    private static final ParallelEvaluator PARALLEL = new ParallelEvaluator(4, 8);
+
+    @AfterClass
+    public static void shutdown() {
+        PARALLEL.shutdown();
+    }
+
+    @Test
+    public void independentGroupsShareOneWave() {
+        SplitPlan.Part root = split(terms(40, "a×"), 8);
+        assertTrue(root.groupCount() > 1);
+        assertEquals(1, root.waveCount);
+        for (int wave : root.waves) {
+            assertEquals(0, wave);
+        }
+    }
+
+    @Test
+    public void recallRunsAfterTheGroupThatStores() {
+        // The first term stores (a+b+c); the last recalls it
+        String text = "(a+b+c)×2+" + terms(40, "a×") + "+(a+b+c)×3";
+        SplitPlan.Part root = split(text, 8);
+        int last = root.groupCount() - 1;
+        assertEquals(0, root.waves[0]);
+        assertEquals(1, root.waves[last]);
+        assertEquals(2, root.waveCount);
+        for (int group = 1; group < last; group++) {
+            assertEquals(0, root.waves[group]);
+        }
+        assertSameAsSequential(text, new double[] {1.5, -2, 0.25});
+    }
+
+    @Test
+    public void chainedRecallsTakeOneWaveEach() {
+        // Each shared term is recalled by the next group, which stores the following one
+        StringBuilder text = new StringBuilder("(a+1)×(a+1)");
+        for (int i = 2; i <= 4; i++) {
+            text.append('+').append(terms(6, "b×")).append("+(a+").append(i - 1).append(")×(a+").append(i)
+                    .append(")×(a+").append(i).append(')');
+        }
+        SplitPlan.Part root = split(text.toString(), 8);
+        assertTrue(root.waveCount > 2);
+        assertSameAsSequential(text.toString(), new double[] {0.5, 3, 0});
+    }
+
+    @Test
+    public void errorsMatchSequentialEvaluation() {
+        String[] texts = {
+            terms(30, "a÷") + "+b÷c",
+            "b÷c+" + terms(30, "a×") + "+√c",
+            terms(20, "a+") + "−√(b−c)×" + terms(20, "c+"),
+            "(" + terms(20, "a×") + ")^(" + terms(20, "b÷") + ")",
+            "(a+b+c)×2+" + terms(30, "a÷") + "+(a+b+c)÷c",
+        };
+        double[][] rows = {{1, 2, 3}, {0, 1, 0}, {2, -1, 4}, {-3, 0.5, -0.0}};
+        for (String text : texts) {
+            for (double[] slots : rows) {
+                assertSameAsSequential(text, slots);
+            }
+        }
+    }
+
+    private static SplitPlan.Part split(String text, int threshold) {
+        SplitPlan.Part root = new SplitPlan(CalculatorLogic.compile(text, "a", "b", "c").program(), threshold).root();
+        assertNotNull(text, root);
+        return root;
+    }
+
+    private static void assertSameAsSequential(String text, double[] slots) {
+        CompiledExpression expression = CalculatorLogic.compile(text, "a", "b", "c");
+        EvaluationResult expected = new EvaluationResult();
+        EvaluationResult actual = new EvaluationResult();
+        assertEquals(text, expression.evaluate(slots, expected), PARALLEL.evaluate(expression, slots, actual));
+        assertEquals(text, expected.getStatus(), actual.getStatus());
+        assertEquals(text, expected.getErrorPosition(), actual.getErrorPosition());
+        assertEquals(text, Double.doubleToLongBits(expected.getValue()), Double.doubleToLongBits(actual.getValue()));
+        assertEquals(text, Double.doubleToLongBits(expression.evaluate(slots)),
+                Double.doubleToLongBits(PARALLEL.evaluate(expression, slots)));
+    }
+
+    /**
+     * Returns "p1+p2+...+pn" for the prefix p.
+     */
+    private static String terms(int count, String prefix) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 1; i <= count; i++) {
+            if (i > 1) {
+                text.append('+');
+            }
+            text.append(prefix).append(i);
+        }
+        return text.toString();
+    }
+}
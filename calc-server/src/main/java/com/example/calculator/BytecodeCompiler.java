@@ -0,0 +1,495 @@
+package com.example.calculator;
+
+import java.lang.invoke.MethodHandles;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * BytecodeCompiler translates a postfix program into a hidden class whose
+ * evaluate method computes the expression in straight-line JVM bytecode:
+ * the operand stack becomes the JVM operand stack, registers become local
+ * variables, constants come from the class's constant pool, and variables
+ * are read from the slots array. The JIT then compiles the method like any
+ * hand-written arithmetic.
+ *
+ * A division or square root that would fail returns Double.NaN at once, as
+ * the interpreter does; callers that need the error status and position run
+ * the interpreter again for that evaluation.
+ * Hidden classes are not reachable by name, so a generated class is
+ * unloaded together with the last reference to its instance.
+ */
+final class BytecodeCompiler {
+
+    // HotSpot does not JIT-compile methods with more bytecode than this, and
+    // interpreting the generated method would be slower than the interpreter
+    static final int MAX_CODE_BYTES = 8000;
+
+    private static final String CLASS_NAME = "com/example/calculator/GeneratedExpressionImpl";
+    private static final String INTERFACE_NAME = "com/example/calculator/GeneratedExpression";
+    private static final int CLASS_FILE_VERSION = 61;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    // JVM instructions used by the generated code
+    private static final int DCONST_0 = 0x0E;
+    private static final int DCONST_1 = 0x0F;
+    private static final int ICONST_0 = 0x03;
+    private static final int BIPUSH = 0x10;
+    private static final int SIPUSH = 0x11;
+    private static final int LDC2_W = 0x14;
+    private static final int DLOAD = 0x18;
+    private static final int DLOAD_0 = 0x26;
+    private static final int ALOAD_0 = 0x2A;
+    private static final int ALOAD_1 = 0x2B;
+    private static final int DALOAD = 0x31;
+    private static final int DSTORE = 0x39;
+    private static final int DSTORE_0 = 0x47;
+    private static final int DUP2 = 0x5C;
+    private static final int DADD = 0x63;
+    private static final int DSUB = 0x67;
+    private static final int DMUL = 0x6B;
+    private static final int DDIV = 0x6F;
+    private static final int DNEG = 0x77;
+    private static final int DCMPL = 0x97;
+    private static final int DCMPG = 0x98;
+    private static final int IFNE = 0x9A;
+    private static final int IFGE = 0x9C;
+    private static final int DRETURN = 0xAF;
+    private static final int RETURN = 0xB1;
+    private static final int INVOKESPECIAL = 0xB7;
+    private static final int INVOKESTATIC = 0xB8;
+    private static final int WIDE = 0xC4;
+
+    // Stack map verification types
+    private static final int ITEM_DOUBLE = 3;
+    private static final int ITEM_OBJECT = 7;
+    private static final int FULL_FRAME = 255;
+
+    // Length of the failure path after a check: ldc2_w NaN, dreturn
+    private static final int FAIL_PATH_LENGTH = 4;
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private BytecodeCompiler() {
+    }
+
+    /**
+     * Defines a hidden class for the program and returns an instance of it.
+     * @return The generated expression, or null if the program is too large to compile profitably
+     * @throws IllegalStateException if the JVM rejects the generated class
+     */
+    static GeneratedExpression compile(ExpressionProgram program) {
+        byte[] classFile = generate(program);
+        if (classFile == null) {
+            return null;
+        }
+        try {
+            Class<?> generated = LOOKUP.defineHiddenClass(classFile, true).lookupClass();
+            return (GeneratedExpression) generated.getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException | LinkageError e) {
+            throw new IllegalStateException("Generated class was rejected", e);
+        }
+    }
+
+    /**
+     * Returns the class file for the program, or null if its method would be too large.
+     */
+    static byte[] generate(ExpressionProgram program) {
+        ClassFile classFile = new ClassFile();
+        int thisClass = classFile.classRef(CLASS_NAME);
+        int objectClass = classFile.classRef("java/lang/Object");
+        int interfaceClass = classFile.classRef(INTERFACE_NAME);
+
+        Bytes code = new Bytes();
+        Bytes frames = new Bytes();
+        int frameCount = emitEvaluate(program, classFile, thisClass, code, frames);
+        if (frameCount < 0 || code.length() > MAX_CODE_BYTES) {
+            return null;
+        }
+
+        Bytes methods = new Bytes();
+        // Constructor: super()
+        Bytes constructor = new Bytes();
+        constructor.u1(ALOAD_0);
+        constructor.u1(INVOKESPECIAL);
+        constructor.u2(classFile.methodRef("java/lang/Object", "<init>", "()V"));
+        constructor.u1(RETURN);
+        writeMethod(methods, classFile, "<init>", "()V", 1, 1, constructor, null, 0);
+        writeMethod(methods, classFile, "evaluate", "([D)D", 2 * program.maxStack() + 4,
+                2 + 2 * program.registers(), code, frames, frameCount);
+
+        Bytes out = new Bytes();
+        out.u4(0xCAFEBABE);
+        out.u2(0);
+        out.u2(CLASS_FILE_VERSION);
+        classFile.writePool(out);
+        out.u2(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+        out.u2(thisClass);
+        out.u2(objectClass);
+        out.u2(1);
+        out.u2(interfaceClass);
+        // No fields, two methods, no attributes
+        out.u2(0);
+        out.u2(2);
+        out.append(methods);
+        out.u2(0);
+        return out.toByteArray();
+    }
+
+    /**
+     * Emits the body of evaluate(double[]) and a stack map frame for every
+     * branch target.
+     * @return The number of frames, or -1 if the program cannot be expressed
+     */
+    private static int emitEvaluate(ExpressionProgram program, ClassFile classFile, int thisClass,
+                                    Bytes code, Bytes frames) {
+        int arrayClass = classFile.classRef("[D");
+        int nan = classFile.doubleConstant(Double.NaN);
+        int registers = program.registers();
+        int frameCount = 0;
+        int lastFrame = -1;
+        int depth = 0;
+
+        // Give every register a value so all of them are doubles in every frame
+        for (int r = 0; r < registers; r++) {
+            code.u1(DCONST_0);
+            localInstruction(code, DSTORE, DSTORE_0, registerLocal(r));
+        }
+
+        int pc = 0;
+        while (pc < program.codeLength()) {
+            int opcode = program.codeAt(pc);
+            switch (opcode) {
+                case Opcodes.CONST:
+                    pushConstant(code, classFile, program.constantAt(program.codeAt(pc + 1)));
+                    depth++;
+                    break;
+                case Opcodes.LOAD: {
+                    int slot = program.codeAt(pc + 1);
+                    if (slot > Short.MAX_VALUE) {
+                        return -1;
+                    }
+                    code.u1(ALOAD_1);
+                    pushInt(code, slot);
+                    code.u1(DALOAD);
+                    depth++;
+                    break;
+                }
+                case Opcodes.STORE:
+                    code.u1(DUP2);
+                    localInstruction(code, DSTORE, DSTORE_0, registerLocal(program.codeAt(pc + 1)));
+                    break;
+                case Opcodes.RECALL:
+                    localInstruction(code, DLOAD, DLOAD_0, registerLocal(program.codeAt(pc + 1)));
+                    depth++;
+                    break;
+                case Opcodes.ADD:
+                    code.u1(DADD);
+                    depth--;
+                    break;
+                case Opcodes.SUB:
+                    code.u1(DSUB);
+                    depth--;
+                    break;
+                case Opcodes.MUL:
+                    code.u1(DMUL);
+                    depth--;
+                    break;
+                case Opcodes.DIV:
+                    // if (y == 0) return NaN; NaN compares unequal, as in the interpreter
+                    code.u1(DUP2);
+                    code.u1(DCONST_0);
+                    code.u1(DCMPL);
+                    emitFailUnless(code, IFNE, nan);
+                    writeFrame(frames, code.length() - lastFrame - 1, thisClass, arrayClass, registers, depth);
+                    lastFrame = code.length();
+                    frameCount++;
+                    code.u1(DDIV);
+                    depth--;
+                    break;
+                case Opcodes.POW:
+                    code.u1(INVOKESTATIC);
+                    code.u2(classFile.methodRef("java/lang/Math", "pow", "(DD)D"));
+                    depth--;
+                    break;
+                case Opcodes.NEG:
+                    code.u1(DNEG);
+                    break;
+                case Opcodes.SQRT:
+                    // if (x < 0) return NaN; dcmpg puts NaN above zero, as in the interpreter
+                    code.u1(DUP2);
+                    code.u1(DCONST_0);
+                    code.u1(DCMPG);
+                    emitFailUnless(code, IFGE, nan);
+                    writeFrame(frames, code.length() - lastFrame - 1, thisClass, arrayClass, registers, depth);
+                    lastFrame = code.length();
+                    frameCount++;
+                    code.u1(INVOKESTATIC);
+                    code.u2(classFile.methodRef("java/lang/Math", "sqrt", "(D)D"));
+                    break;
+                case Opcodes.SQUARE:
+                    code.u1(DUP2);
+                    code.u1(DMUL);
+                    break;
+                case Opcodes.CUBE:
+                    // x*(x*x), which equals (x*x)*x since multiplication commutes
+                    code.u1(DUP2);
+                    code.u1(DUP2);
+                    code.u1(DMUL);
+                    code.u1(DMUL);
+                    break;
+                default:
+                    throw new IllegalStateException("Unknown opcode: " + opcode);
+            }
+            pc += Opcodes.hasOperand(opcode) ? 2 : 1;
+        }
+
+        code.u1(DRETURN);
+        return frameCount;
+    }
+
+    /**
+     * Emits a branch over the failure path, taken when the comparison passes,
+     * followed by the failure path returning NaN.
+     */
+    private static void emitFailUnless(Bytes code, int branch, int nan) {
+        code.u1(branch);
+        code.u2(3 + FAIL_PATH_LENGTH);
+        code.u1(LDC2_W);
+        code.u2(nan);
+        code.u1(DRETURN);
+    }
+
+    private static void pushConstant(Bytes code, ClassFile classFile, double value) {
+        if (Double.doubleToRawLongBits(value) == 0) {
+            code.u1(DCONST_0);
+        } else if (value == 1) {
+            code.u1(DCONST_1);
+        } else {
+            code.u1(LDC2_W);
+            code.u2(classFile.doubleConstant(value));
+        }
+    }
+
+    private static void pushInt(Bytes code, int value) {
+        if (value <= 5) {
+            code.u1(ICONST_0 + value);
+        } else if (value <= Byte.MAX_VALUE) {
+            code.u1(BIPUSH);
+            code.u1(value);
+        } else {
+            code.u1(SIPUSH);
+            code.u2(value);
+        }
+    }
+
+    /**
+     * Local variable of a register; locals 0 and 1 are this and the slots array.
+     */
+    private static int registerLocal(int register) {
+        return 2 + 2 * register;
+    }
+
+    /**
+     * Emits dload or dstore in its shortest form for the local.
+     */
+    private static void localInstruction(Bytes code, int opcode, int shortOpcode0, int local) {
+        if (local <= 3) {
+            code.u1(shortOpcode0 + local);
+        } else if (local <= 255) {
+            code.u1(opcode);
+            code.u1(local);
+        } else {
+            code.u1(WIDE);
+            code.u1(opcode);
+            code.u2(local);
+        }
+    }
+
+    /**
+     * Writes a full stack map frame: this, the slots array and the registers
+     * as locals, and depth doubles on the operand stack.
+     */
+    private static void writeFrame(Bytes frames, int offsetDelta, int thisClass, int arrayClass,
+                                   int registers, int depth) {
+        frames.u1(FULL_FRAME);
+        frames.u2(offsetDelta);
+        frames.u2(2 + registers);
+        frames.u1(ITEM_OBJECT);
+        frames.u2(thisClass);
+        frames.u1(ITEM_OBJECT);
+        frames.u2(arrayClass);
+        for (int r = 0; r < registers; r++) {
+            frames.u1(ITEM_DOUBLE);
+        }
+        frames.u2(depth);
+        for (int i = 0; i < depth; i++) {
+            frames.u1(ITEM_DOUBLE);
+        }
+    }
+
+    private static void writeMethod(Bytes methods, ClassFile classFile, String name, String descriptor,
+                                    int maxStack, int maxLocals, Bytes code, Bytes frames, int frameCount) {
+        methods.u2(ACC_PUBLIC);
+        methods.u2(classFile.utf8(name));
+        methods.u2(classFile.utf8(descriptor));
+        methods.u2(1);
+
+        Bytes attribute = new Bytes();
+        attribute.u2(maxStack);
+        attribute.u2(maxLocals);
+        attribute.u4(code.length());
+        attribute.append(code);
+        // No exception handlers
+        attribute.u2(0);
+        if (frameCount > 0) {
+            attribute.u2(1);
+            attribute.u2(classFile.utf8("StackMapTable"));
+            attribute.u4(2 + frames.length());
+            attribute.u2(frameCount);
+            attribute.append(frames);
+        } else {
+            attribute.u2(0);
+        }
+
+        methods.u2(classFile.utf8("Code"));
+        methods.u4(attribute.length());
+        methods.append(attribute);
+    }
+
+    /**
+     * Constant pool of the class being generated. Equal entries are shared.
+     */
+    private static final class ClassFile {
+
+        private static final int CONSTANT_UTF8 = 1;
+        private static final int CONSTANT_DOUBLE = 6;
+        private static final int CONSTANT_CLASS = 7;
+        private static final int CONSTANT_METHODREF = 10;
+        private static final int CONSTANT_NAME_AND_TYPE = 12;
+
+        private final Bytes pool = new Bytes();
+        private final Map<String, Integer> entries = new HashMap<>();
+        private int count = 1;
+
+        int utf8(String value) {
+            Integer index = entries.get("U" + value);
+            if (index != null) {
+                return index;
+            }
+            pool.u1(CONSTANT_UTF8);
+            pool.utf8(value);
+            return add("U" + value, 1);
+        }
+
+        int classRef(String internalName) {
+            Integer index = entries.get("C" + internalName);
+            if (index != null) {
+                return index;
+            }
+            int name = utf8(internalName);
+            pool.u1(CONSTANT_CLASS);
+            pool.u2(name);
+            return add("C" + internalName, 1);
+        }
+
+        int methodRef(String owner, String name, String descriptor) {
+            String key = "M" + owner + '.' + name + descriptor;
+            Integer index = entries.get(key);
+            if (index != null) {
+                return index;
+            }
+            int ownerClass = classRef(owner);
+            int nameIndex = utf8(name);
+            int descriptorIndex = utf8(descriptor);
+            pool.u1(CONSTANT_NAME_AND_TYPE);
+            pool.u2(nameIndex);
+            pool.u2(descriptorIndex);
+            int nameAndType = add("N" + key, 1);
+            pool.u1(CONSTANT_METHODREF);
+            pool.u2(ownerClass);
+            pool.u2(nameAndType);
+            return add(key, 1);
+        }
+
+        int doubleConstant(double value) {
+            long bits = Double.doubleToRawLongBits(value);
+            String key = "D" + bits;
+            Integer index = entries.get(key);
+            if (index != null) {
+                return index;
+            }
+            pool.u1(CONSTANT_DOUBLE);
+            pool.u4((int) (bits >>> 32));
+            pool.u4((int) bits);
+            // A double takes two constant pool indices
+            return add(key, 2);
+        }
+
+        void writePool(Bytes out) {
+            out.u2(count);
+            out.append(pool);
+        }
+
+        private int add(String key, int size) {
+            int index = count;
+            entries.put(key, index);
+            count += size;
+            return index;
+        }
+    }
+
+    /**
+     * Growable big-endian byte buffer.
+     */
+    private static final class Bytes {
+
+        private byte[] data = new byte[256];
+        private int length;
+
+        void u1(int value) {
+            if (length == data.length) {
+                data = Arrays.copyOf(data, length * 2);
+            }
+            data[length++] = (byte) value;
+        }
+
+        void u2(int value) {
+            u1(value >>> 8);
+            u1(value);
+        }
+
+        void u4(int value) {
+            u2(value >>> 16);
+            u2(value);
+        }
+
+        /**
+         * Writes a string as a length-prefixed modified UTF-8 constant; the
+         * names used here are all ASCII.
+         */
+        void utf8(String value) {
+            u2(value.length());
+            for (int i = 0; i < value.length(); i++) {
+                u1(value.charAt(i));
+            }
+        }
+
+        void append(Bytes other) {
+            for (int i = 0; i < other.length; i++) {
+                u1(other.data[i]);
+            }
+        }
+
+        int length() {
+            return length;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(data, length);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.example.calculator;
+
+/**
+ * GeneratedExpression is implemented by the hidden classes BytecodeCompiler
+ * defines: one straight-line method per compiled expression.
+ */
+interface GeneratedExpression {
+
+    /**
+     * Computes the expression for the given variable values.
+     * @param slots Variable values, at least one per variable of the expression
+     * @return The result, or Double.NaN for division by zero or the square root of a negative number
+     */
+    double evaluate(double[] slots);
+}
@@ -0,0 +1,118 @@
+package com.example.calculator;
+
+/**
+ * HotExpression evaluates a compiled expression and switches it to JVM
+ * bytecode once it proves hot. The first threshold evaluations run on the
+ * expression's own evaluator; the evaluation that reaches the threshold
+ * compiles the program into a hidden class with BytecodeCompiler, and every
+ * later evaluation calls that class directly. Expressions too large for the
+ * JIT to compile keep their evaluator.
+ *
+ * Values are identical on both paths. Generated code stops at the first
+ * division by zero or negative square root, like the interpreter, but does
+ * not know why it stopped, so an evaluation that fails or is not finite is
+ * repeated on the interpreter to fill in the EvaluationResult.
+ * Instances are thread-safe. The invocation count is not synchronized, so
+ * concurrent callers may reach the threshold a few evaluations late.
+ */
+public final class HotExpression {
+
+    public static final int DEFAULT_THRESHOLD = 10_000;
+
+    private final CompiledExpression expression;
+    private final int threshold;
+
+    private int invocations;
+    // Set once compilation was tried, whether or not it produced code
+    private volatile boolean attempted;
+    private volatile GeneratedExpression generated;
+
+    public HotExpression(CompiledExpression expression) {
+        this(expression, DEFAULT_THRESHOLD);
+    }
+
+    /**
+     * @param expression The expression to evaluate
+     * @param threshold Number of evaluations before it is compiled to bytecode; 0 compiles on first use
+     */
+    public HotExpression(CompiledExpression expression, int threshold) {
+        if (threshold < 0) {
+            throw new IllegalArgumentException("Threshold must not be negative");
+        }
+        this.expression = expression;
+        this.threshold = threshold;
+    }
+
+    /**
+     * Evaluates the expression with the given variable values.
+     * @param slots Variable values in slot order, see CompiledExpression.getVariableNames()
+     * @return The result as a double, or Double.NaN for errors
+     * @throws IllegalArgumentException if fewer values than variables are given
+     */
+    public double evaluate(double[] slots) {
+        GeneratedExpression code = generated;
+        if (code == null) {
+            countInvocation();
+            return expression.evaluate(slots);
+        }
+        if (slots.length < expression.getVariableCount()) {
+            throw new IllegalArgumentException("Expected " + expression.getVariableCount() + " variable values");
+        }
+        return code.evaluate(slots);
+    }
+
+    /**
+     * Evaluates the expression without throwing, reporting errors through the holder.
+     * @param slots Variable values in slot order, see CompiledExpression.getVariableNames()
+     * @param result Receives the value, or the error status and position
+     * @return true if the evaluation succeeded
+     */
+    public boolean evaluate(double[] slots, EvaluationResult result) {
+        GeneratedExpression code = generated;
+        if (code == null) {
+            countInvocation();
+        } else if (slots.length >= expression.getVariableCount()) {
+            double value = code.evaluate(slots);
+            if (value - value == 0) {
+                result.reset();
+                return result.complete(value);
+            }
+        }
+        return expression.evaluate(slots, result);
+    }
+
+    /**
+     * Returns true once the expression runs as generated bytecode.
+     */
+    public boolean isCompiled() {
+        return generated != null;
+    }
+
+    public CompiledExpression getExpression() {
+        return expression;
+    }
+
+    private void countInvocation() {
+        if (!attempted && ++invocations >= threshold) {
+            compile();
+        }
+    }
+
+    private synchronized void compile() {
+        if (attempted) {
+            return;
+        }
+        try {
+            generated = BytecodeCompiler.compile(expression.program());
+        } catch (IllegalStateException e) {
+            // Keep evaluating with the expression's own evaluator
+        } finally {
+            attempted = true;
+        }
+    }
+
+    @Override
+    public String toString() {
+        return expression.toString();
+    }
+}
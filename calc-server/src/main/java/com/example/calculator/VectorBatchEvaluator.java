@@ -0,0 +1,94 @@
+package com.example.calculator;
+
+/**
+ * VectorBatchEvaluator evaluates one compiled expression over columns of
+ * variable values like BatchEvaluator, running each opcode over SIMD lanes
+ * with the Vector API. Results are identical to BatchEvaluator's.
+ *
+ * The Vector API is an incubating module, so the JVM has to be started with
+ * --add-modules jdk.incubator.vector. Without it, or on CPUs whose vectors
+ * hold a single double, every call falls back to BatchEvaluator.
+ * An instance owns its scratch columns and must not be shared between threads.
+ */
+public final class VectorBatchEvaluator {
+
+    // Whether the Vector API is present and wider than one lane on this CPU
+    private static final boolean VECTORIZED = vectorSupported();
+
+    private final int blockSize;
+    private final BatchEvaluator scalar;
+    private double[][] stack = new double[0][];
+    private final boolean[] failed;
+
+    public VectorBatchEvaluator() {
+        this(BatchEvaluator.DEFAULT_BLOCK_SIZE);
+    }
+
+    /**
+     * @param blockSize Number of rows processed per pass over the program
+     */
+    public VectorBatchEvaluator(int blockSize) {
+        this.scalar = new BatchEvaluator(blockSize);
+        this.blockSize = blockSize;
+        this.failed = new boolean[blockSize];
+    }
+
+    /**
+     * Returns true if evaluation uses vector instructions, false if it falls back to scalar code.
+     */
+    public static boolean isVectorized() {
+        return VECTORIZED;
+    }
+
+    /**
+     * Evaluates the expression for every row of the columns.
+     * @param expression The compiled expression
+     * @param columns One column per variable slot, each at least results.length long
+     * @param results Receives one result per row; Double.NaN marks rows with errors
+     */
+    public void evaluate(CompiledExpression expression, double[][] columns, double[] results) {
+        evaluate(expression, columns, results, 0, results.length);
+    }
+
+    /**
+     * Evaluates the expression for rows [from, to) of the columns.
+     * @param expression The compiled expression
+     * @param columns One column per variable slot, each at least to long
+     * @param results Receives one result per row at the row's index
+     * @param from First row, inclusive
+     * @param to Last row, exclusive
+     */
+    public void evaluate(CompiledExpression expression, double[][] columns, double[] results, int from, int to) {
+        if (!VECTORIZED) {
+            scalar.evaluate(expression, columns, results, from, to);
+            return;
+        }
+        BatchEvaluator.checkArguments(expression, columns, results, from, to);
+        ExpressionProgram program = expression.program();
+        ensureStack(program.frameSize());
+
+        for (int offset = from; offset < to; offset += blockSize) {
+            int length = Math.min(blockSize, to - offset);
+            VectorKernels.executeBlock(program, columns, offset, length, stack, failed, results);
+        }
+    }
+
+    private void ensureStack(int depth) {
+        if (stack.length < depth) {
+            double[][] grown = new double[depth][];
+            System.arraycopy(stack, 0, grown, 0, stack.length);
+            for (int i = stack.length; i < depth; i++) {
+                grown[i] = new double[blockSize];
+            }
+            stack = grown;
+        }
+    }
+
+    private static boolean vectorSupported() {
+        // Checked first so VectorKernels is never linked without the module
+        if (ModuleLayer.boot().findModule("jdk.incubator.vector").isEmpty()) {
+            return false;
+        }
+        return VectorKernels.isProfitable();
+    }
+}
@@ -0,0 +1,229 @@
+package com.example.calculator;
+
+import java.util.Arrays;
+
+import jdk.incubator.vector.DoubleVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * VectorKernels runs a program over a block of rows like
+ * ExpressionProgram.executeBlock, but each opcode processes the columns in
+ * DoubleVector chunks of the widest lanes the CPU offers, with a scalar loop
+ * for the rows left over. Only operations that the Vector API computes
+ * exactly like the scalar code are vectorized; POW stays on Math.pow, since
+ * the vector POW may differ in the last bit.
+ * This class links against jdk.incubator.vector; VectorBatchEvaluator only
+ * touches it after checking that the module is present.
+ */
+final class VectorKernels {
+
+    private static final VectorSpecies<Double> SPECIES = DoubleVector.SPECIES_PREFERRED;
+
+    private VectorKernels() {
+    }
+
+    /**
+     * Returns true if vectors on this CPU hold more than one double.
+     */
+    static boolean isProfitable() {
+        return SPECIES.length() > 1;
+    }
+
+    /**
+     * Runs the program over rows [offset, offset + length) of the columns.
+     * @param stack Scratch stack with at least frameSize() columns, each at least length long
+     * @param failed Scratch flags, set for rows that divide by zero or take a negative square root
+     * @param results Receives the result for each row at the same row index; Double.NaN marks errors
+     */
+    static void executeBlock(ExpressionProgram program, double[][] columns, int offset, int length,
+                             double[][] stack, boolean[] failed, double[] results) {
+        final int registerBase = program.maxStack();
+        final int bound = SPECIES.loopBound(length);
+        boolean anyFailed = false;
+        int sp = 0;
+        int pc = 0;
+
+        while (pc < program.codeLength()) {
+            int opcode = program.codeAt(pc);
+            switch (opcode) {
+                case Opcodes.CONST:
+                    Arrays.fill(stack[sp++], 0, length, program.constantAt(program.codeAt(pc + 1)));
+                    break;
+                case Opcodes.LOAD:
+                    System.arraycopy(columns[program.codeAt(pc + 1)], offset, stack[sp++], 0, length);
+                    break;
+                case Opcodes.STORE:
+                    System.arraycopy(stack[sp - 1], 0, stack[registerBase + program.codeAt(pc + 1)], 0, length);
+                    break;
+                case Opcodes.RECALL:
+                    System.arraycopy(stack[registerBase + program.codeAt(pc + 1)], 0, stack[sp++], 0, length);
+                    break;
+                case Opcodes.NEG: {
+                    double[] x = stack[sp - 1];
+                    int r = 0;
+                    for (; r < bound; r += SPECIES.length()) {
+                        DoubleVector.fromArray(SPECIES, x, r).neg().intoArray(x, r);
+                    }
+                    for (; r < length; r++) {
+                        x[r] = -x[r];
+                    }
+                    break;
+                }
+                case Opcodes.SQRT: {
+                    double[] x = stack[sp - 1];
+                    int r = 0;
+                    for (; r < bound; r += SPECIES.length()) {
+                        DoubleVector v = DoubleVector.fromArray(SPECIES, x, r);
+                        VectorMask<Double> negative = v.lt(0);
+                        if (negative.anyTrue()) {
+                            if (!anyFailed) {
+                                Arrays.fill(failed, 0, length, false);
+                                anyFailed = true;
+                            }
+                            markFailed(failed, r, negative);
+                        }
+                        v.sqrt().intoArray(x, r);
+                    }
+                    for (; r < length; r++) {
+                        if (x[r] < 0) {
+                            if (!anyFailed) {
+                                Arrays.fill(failed, 0, length, false);
+                                anyFailed = true;
+                            }
+                            failed[r] = true;
+                        }
+                        x[r] = Math.sqrt(x[r]);
+                    }
+                    break;
+                }
+                case Opcodes.SQUARE: {
+                    double[] x = stack[sp - 1];
+                    int r = 0;
+                    for (; r < bound; r += SPECIES.length()) {
+                        DoubleVector v = DoubleVector.fromArray(SPECIES, x, r);
+                        v.mul(v).intoArray(x, r);
+                    }
+                    for (; r < length; r++) {
+                        x[r] = x[r] * x[r];
+                    }
+                    break;
+                }
+                case Opcodes.CUBE: {
+                    double[] x = stack[sp - 1];
+                    int r = 0;
+                    for (; r < bound; r += SPECIES.length()) {
+                        DoubleVector v = DoubleVector.fromArray(SPECIES, x, r);
+                        v.mul(v).mul(v).intoArray(x, r);
+                    }
+                    for (; r < length; r++) {
+                        x[r] = x[r] * x[r] * x[r];
+                    }
+                    break;
+                }
+                default: {
+                    sp--;
+                    double[] a = stack[sp - 1];
+                    double[] b = stack[sp];
+                    if (opcode == Opcodes.DIV) {
+                        anyFailed = divide(a, b, length, failed, anyFailed);
+                    } else {
+                        binary(opcode, a, b, length);
+                    }
+                    break;
+                }
+            }
+            pc += Opcodes.hasOperand(opcode) ? 2 : 1;
+        }
+
+        System.arraycopy(stack[0], 0, results, offset, length);
+        if (anyFailed) {
+            for (int r = 0; r < length; r++) {
+                if (failed[r]) {
+                    results[offset + r] = Double.NaN;
+                }
+            }
+        }
+    }
+
+    /**
+     * Computes a[r] = a[r] op b[r] for ADD, SUB, MUL and POW.
+     */
+    private static void binary(int opcode, double[] a, double[] b, int length) {
+        final int bound = SPECIES.loopBound(length);
+        int r = 0;
+        switch (opcode) {
+            case Opcodes.ADD:
+                for (; r < bound; r += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, a, r).add(DoubleVector.fromArray(SPECIES, b, r)).intoArray(a, r);
+                }
+                for (; r < length; r++) {
+                    a[r] = a[r] + b[r];
+                }
+                break;
+            case Opcodes.SUB:
+                for (; r < bound; r += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, a, r).sub(DoubleVector.fromArray(SPECIES, b, r)).intoArray(a, r);
+                }
+                for (; r < length; r++) {
+                    a[r] = a[r] - b[r];
+                }
+                break;
+            case Opcodes.MUL:
+                for (; r < bound; r += SPECIES.length()) {
+                    DoubleVector.fromArray(SPECIES, a, r).mul(DoubleVector.fromArray(SPECIES, b, r)).intoArray(a, r);
+                }
+                for (; r < length; r++) {
+                    a[r] = a[r] * b[r];
+                }
+                break;
+            case Opcodes.POW:
+                for (; r < length; r++) {
+                    a[r] = Math.pow(a[r], b[r]);
+                }
+                break;
+            default:
+                throw new IllegalStateException("Unknown opcode: " + opcode);
+        }
+    }
+
+    /**
+     * Computes a[r] = a[r] / b[r], flagging rows that divide by zero.
+     * @return Whether any row of the block has failed so far
+     */
+    private static boolean divide(double[] a, double[] b, int length, boolean[] failed, boolean anyFailed) {
+        final int bound = SPECIES.loopBound(length);
+        int r = 0;
+        for (; r < bound; r += SPECIES.length()) {
+            DoubleVector divisor = DoubleVector.fromArray(SPECIES, b, r);
+            VectorMask<Double> zero = divisor.eq(0);
+            if (zero.anyTrue()) {
+                if (!anyFailed) {
+                    Arrays.fill(failed, 0, length, false);
+                    anyFailed = true;
+                }
+                markFailed(failed, r, zero);
+            }
+            DoubleVector.fromArray(SPECIES, a, r).div(divisor).intoArray(a, r);
+        }
+        for (; r < length; r++) {
+            if (b[r] == 0) {
+                if (!anyFailed) {
+                    Arrays.fill(failed, 0, length, false);
+                    anyFailed = true;
+                }
+                failed[r] = true;
+            }
+            a[r] = a[r] / b[r];
+        }
+        return anyFailed;
+    }
+
+    private static void markFailed(boolean[] failed, int row, VectorMask<Double> mask) {
+        for (int lane = 0; lane < SPECIES.length(); lane++) {
+            if (mask.laneIsSet(lane)) {
+                failed[row + lane] = true;
+            }
+        }
+    }
+}
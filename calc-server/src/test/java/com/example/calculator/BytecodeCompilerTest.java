@@ -0,0 +1,104 @@
+package com.example.calculator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Generated classes must pass the verifier, including the stack map frames
+ * at the targets of the division and square root checks, and give the
+ * interpreter's bits for every value, NaN for failures included.
+ */
+public class BytecodeCompilerTest {
+
+    private static final double[] VALUES = {0, -0.0, 1, -1, 2.5, -3.75, 0.1, 1e-300, 1e300, 7};
+
+    @Test
+    public void generatedCodeMatchesInterpreter() {
+        assertSameBits("a+b×c−a÷b", "a", "b", "c");
+        assertSameBits("a^b^c", "a", "b", "c");
+        assertSameBits("-a²+b^3−c%", "a", "b", "c");
+        assertSameBits("√a+√(b−c)", "a", "b", "c");
+        assertSameBits("a÷(b−c)÷(c+1)", "a", "b", "c");
+        assertSameBits("1÷a+√b×2.5−c^0.5", "a", "b", "c");
+    }
+
+    @Test
+    public void sharedSubexpressionsUseLocals() {
+        CompiledExpression expression = assertSameBits("(a+b)×(a+b)+√(a+b)÷(a+b−c)", "a", "b", "c");
+        assertTrue(expression.program().registers() > 0);
+    }
+
+    @Test
+    public void manyRegistersAndConstantsNeedWideInstructions() {
+        // 150 registers take locals past index 255, so they load through wide
+        StringBuilder text = new StringBuilder("0");
+        for (int i = 1; i <= 150; i++) {
+            text.append("+(a+").append(i).append(")×(a+").append(i).append(")÷(b−").append(i).append(')');
+        }
+        CompiledExpression expression = assertSameBits(text.toString(), "a", "b");
+        assertTrue(expression.program().registers() > 127);
+    }
+
+    @Test
+    public void largeProgramIsLeftToInterpreter() {
+        StringBuilder text = new StringBuilder("a");
+        for (int i = 1; i <= 3000; i++) {
+            text.append("+a×").append(i);
+        }
+        ExpressionProgram program = CalculatorLogic.compile(text.toString(), "a").program();
+        assertNull(BytecodeCompiler.generate(program));
+        assertNull(BytecodeCompiler.compile(program));
+
+        HotExpression hot = new HotExpression(CalculatorLogic.compile(text.toString(), "a"), 0);
+        double[] slots = {0.5};
+        assertEquals(hot.getExpression().evaluate(slots), hot.evaluate(slots), 0.0);
+        assertFalse(hot.isCompiled());
+    }
+
+    @Test
+    public void hotExpressionSwitchesAtThreshold() {
+        HotExpression hot = new HotExpression(CalculatorLogic.compile("a÷b", "a", "b"), 3);
+        double[] slots = {1, 4};
+        for (int i = 0; i < 2; i++) {
+            hot.evaluate(slots);
+            assertFalse(hot.isCompiled());
+        }
+        hot.evaluate(slots);
+        assertTrue(hot.isCompiled());
+        assertEquals(0.25, hot.evaluate(slots), 0.0);
+
+        // Failures are repeated on the interpreter for their status and position
+        EvaluationResult result = new EvaluationResult();
+        assertFalse(hot.evaluate(new double[] {1, 0}, result));
+        assertEquals(EvaluationResult.DIVISION_BY_ZERO, result.getStatus());
+        assertEquals(1, result.getErrorPosition());
+    }
+
+    /**
+     * Compares generated code with the interpreter for every combination of VALUES.
+     */
+    private static CompiledExpression assertSameBits(String text, String... variables) {
+        CompiledExpression expression = CalculatorLogic.compile(text, variables);
+        GeneratedExpression generated = BytecodeCompiler.compile(expression.program());
+        assertNotNull(text, generated);
+        double[] slots = new double[variables.length];
+        int combinations = (int) Math.pow(VALUES.length, variables.length);
+        for (int n = 0; n < combinations; n++) {
+            for (int i = 0, m = n; i < slots.length; i++, m /= VALUES.length) {
+                slots[i] = VALUES[m % VALUES.length];
+            }
+            double expected = expression.evaluate(slots);
+            double actual = generated.evaluate(slots);
+            assertEquals(text + " at " + Arrays.toString(slots),
+                    Double.doubleToLongBits(expected), Double.doubleToLongBits(actual));
+        }
+        return expression;
+    }
+}
@@ -0,0 +1,114 @@
+package com.example.calculator;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Random expressions must give the interpreter's bits in generated
+ * bytecode, in HotExpression on either side of its threshold and in every
+ * lane of VectorBatchEvaluator.
+ */
+public class ServerDifferentialFuzzTest {
+
+    private static final String[] VARIABLES = {"a", "b", "c"};
+    private static final String[] OPERATORS = {"+", "-", "−", "×", "÷", "^"};
+    private static final int EXPRESSIONS = 1000;
+    // Not a multiple of any lane count, so every batch ends in a scalar tail
+    private static final int ROWS = 37;
+
+    @Test
+    public void everyPathMatchesInterpreter() {
+        Random random = new Random(2024);
+        BatchEvaluator batch = new BatchEvaluator(16);
+        VectorBatchEvaluator vector = new VectorBatchEvaluator(16);
+        double[][] columns = new double[VARIABLES.length][ROWS];
+        double[] batchResults = new double[ROWS];
+        double[] vectorResults = new double[ROWS];
+        for (int n = 0; n < EXPRESSIONS; n++) {
+            String text = expression(random, 1 + random.nextInt(6));
+            CompiledExpression expression = CalculatorLogic.compile(text, VARIABLES);
+            GeneratedExpression generated = BytecodeCompiler.compile(expression.program());
+            HotExpression hot = new HotExpression(expression, ROWS / 2);
+
+            for (double[] column : columns) {
+                for (int row = 0; row < ROWS; row++) {
+                    column[row] = value(random);
+                }
+            }
+            batch.evaluate(expression, columns, batchResults);
+            vector.evaluate(expression, columns, vectorResults);
+
+            double[] slots = new double[VARIABLES.length];
+            for (int row = 0; row < ROWS; row++) {
+                for (int i = 0; i < slots.length; i++) {
+                    slots[i] = columns[i][row];
+                }
+                EvaluationResult expected = new EvaluationResult();
+                expression.evaluate(slots, expected);
+                long value = bits(expression.evaluate(slots));
+                String where = text + " at row " + row;
+
+                assertEquals(where, value, bits(generated.evaluate(slots)));
+                assertEquals(where, value, bits(hot.evaluate(slots)));
+                EvaluationResult actual = new EvaluationResult();
+                hot.evaluate(slots, actual);
+                assertEquals(where, expected.getStatus(), actual.getStatus());
+                assertEquals(where, expected.getErrorPosition(), actual.getErrorPosition());
+                assertEquals(where, bits(expected.getValue()), bits(actual.getValue()));
+
+                assertEquals(where, value, bits(batchResults[row]));
+                assertEquals(where, value, bits(vectorResults[row]));
+            }
+        }
+    }
+
+    private static long bits(double value) {
+        return Double.doubleToLongBits(value);
+    }
+
+    /**
+     * Returns a random expression over VARIABLES nested at most depth levels.
+     */
+    private static String expression(Random random, int depth) {
+        if (depth == 0 || random.nextInt(4) == 0) {
+            switch (random.nextInt(3)) {
+                case 0:
+                    return Integer.toString(random.nextInt(10));
+                case 1:
+                    return random.nextInt(100) + "." + random.nextInt(100);
+                default:
+                    return VARIABLES[random.nextInt(VARIABLES.length)];
+            }
+        }
+        switch (random.nextInt(8)) {
+            case 0:
+                return "-" + expression(random, depth - 1);
+            case 1:
+                return "√(" + expression(random, depth - 1) + ")";
+            case 2:
+                return "(" + expression(random, depth - 1) + ")" + (random.nextBoolean() ? "²" : "%");
+            case 3:
+                return "(" + expression(random, depth - 1) + ")";
+            default:
+                return expression(random, depth - 1) + OPERATORS[random.nextInt(OPERATORS.length)]
+                        + expression(random, depth - 1);
+        }
+    }
+
+    /**
+     * Returns a variable value, often zero or negative so evaluations fail.
+     */
+    private static double value(Random random) {
+        switch (random.nextInt(5)) {
+            case 0:
+                return 0;
+            case 1:
+                return random.nextInt(7) - 3;
+            default:
+                return (random.nextDouble() - 0.4) * Math.pow(10, random.nextInt(6) - 3);
+        }
+    }
+}
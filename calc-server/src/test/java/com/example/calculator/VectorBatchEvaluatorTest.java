@@ -0,0 +1,114 @@
+package com.example.calculator;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Vector lanes, the scalar tail after the last full vector and the edges
+ * of blocks must all give BatchEvaluator's bits, with failing rows NaN.
+ */
+public class VectorBatchEvaluatorTest {
+
+    private static final String[] EXPRESSIONS = {
+        "a+b×c",
+        "a÷b−c",
+        "√a+√(b−c)",
+        "a^b+c^0.5",
+        "-a²+b^3−c%",
+        "(a+b)×(a+b)÷(c−1)",
+        "a^b^c",
+    };
+
+    @Test
+    public void vectorModuleIsAdded() {
+        assertTrue(ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent());
+    }
+
+    @Test
+    public void everyRowCountMatchesBatchEvaluator() {
+        // 13 is not a multiple of any lane count, so blocks end mid-vector
+        for (int blockSize : new int[] {13, 64, BatchEvaluator.DEFAULT_BLOCK_SIZE}) {
+            VectorBatchEvaluator vector = new VectorBatchEvaluator(blockSize);
+            BatchEvaluator batch = new BatchEvaluator(blockSize);
+            for (String text : EXPRESSIONS) {
+                CompiledExpression expression = CalculatorLogic.compile(text, "a", "b", "c");
+                for (int rows = 0; rows <= 70; rows++) {
+                    assertSameRows(text, expression, vector, batch, columns(rows, rows), 0, rows);
+                }
+                assertSameRows(text, expression, vector, batch, columns(5003, 1), 0, 5003);
+            }
+        }
+    }
+
+    @Test
+    public void rangesLeaveOtherRowsAlone() {
+        CompiledExpression expression = CalculatorLogic.compile("a÷b+√c", "a", "b", "c");
+        VectorBatchEvaluator vector = new VectorBatchEvaluator(16);
+        BatchEvaluator batch = new BatchEvaluator(16);
+        double[][] columns = columns(100, 2);
+        for (int from = 0; from < 20; from++) {
+            for (int to = from; to <= 100; to += 9) {
+                assertSameRows("a÷b+√c", expression, vector, batch, columns, from, to);
+            }
+        }
+    }
+
+    @Test
+    public void failingRowsAreNaN() {
+        CompiledExpression expression = CalculatorLogic.compile("a÷b+√c", "a", "b", "c");
+        double[][] columns = {
+            {1, 1, 1, 1, 1, 1, 1, 1, 1, 1, 1},
+            {2, 0, 2, 2, -0.0, 2, 2, 2, 2, 2, 0},
+            {4, 4, -1, 4, 4, 4, 4, 4, -0.0, 4, 4},
+        };
+        double[] results = new double[11];
+        new VectorBatchEvaluator(8).evaluate(expression, columns, results);
+        double[] expected = {2.5, Double.NaN, Double.NaN, 2.5, Double.NaN, 2.5, 2.5, 2.5, 0.5, 2.5, Double.NaN};
+        assertArrayEquals(expected, results, 0.0);
+    }
+
+    private static void assertSameRows(String text, CompiledExpression expression, VectorBatchEvaluator vector,
+                                       BatchEvaluator batch, double[][] columns, int from, int to) {
+        int rows = columns[0].length;
+        double[] expected = new double[rows];
+        double[] actual = new double[rows];
+        Arrays.fill(expected, 42);
+        Arrays.fill(actual, 42);
+        batch.evaluate(expression, columns, expected, from, to);
+        vector.evaluate(expression, columns, actual, from, to);
+        for (int row = 0; row < rows; row++) {
+            assertEquals(text + " row " + row + " of [" + from + ", " + to + ")",
+                    Double.doubleToLongBits(expected[row]), Double.doubleToLongBits(actual[row]));
+        }
+    }
+
+    /**
+     * Returns three columns of mixed values, including zeros and negatives so some rows fail.
+     */
+    private static double[][] columns(int rows, long seed) {
+        Random random = new Random(seed);
+        double[][] columns = new double[3][rows];
+        for (double[] column : columns) {
+            for (int row = 0; row < rows; row++) {
+                switch (random.nextInt(6)) {
+                    case 0:
+                        column[row] = 0;
+                        break;
+                    case 1:
+                        column[row] = random.nextInt(5) - 2;
+                        break;
+                    default:
+                        column[row] = (random.nextDouble() - 0.3) * Math.pow(10, random.nextInt(8) - 4);
+                        break;
+                }
+            }
+        }
+        return columns;
+    }
+}